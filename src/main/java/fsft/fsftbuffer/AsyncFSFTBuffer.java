@@ -0,0 +1,159 @@
+package fsft.fsftbuffer;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A view of an {@link FSFTBuffer} whose lookups and loads return {@link CompletableFuture}s
+ * instead of blocking, for callers on virtual threads or in asynchronous pipelines.
+ *
+ * <p>A load started by {@link #get(String, Function)} is kept by the buffer as a pending
+ * future until the loaded object has been added. A lookup of the same id in the meantime,
+ * through this view, returns a future of the pending load at once; only a synchronous
+ * {@link FSFTBuffer#get(String, Function)} of the id waits for it. Loads run on the
+ * {@link Executor} given to the view, so a slow source never holds up the calling
+ * thread. The other operations take the buffer's lock for as long as the synchronous ones
+ * do, which is short and never spans a load, so they complete the returned future before
+ * returning.</p>
+ *
+ * <p>The returned futures are copies: completing or cancelling one of them does not affect
+ * the load or the other callers waiting for it.</p>
+ *
+ * <p>An {@code AsyncFSFTBuffer} is thread-safe.</p>
+ *
+ * @param <B> the type of objects in the buffer; implements the {@link Bufferable} interface
+ */
+public class AsyncFSFTBuffer<B extends Bufferable> {
+
+    // Abstraction Function:
+    //      AF(r) = the buffer r.buffer, with the loads of r run on r.executor
+
+    // Rep Invariant is
+    //      buffer and executor are not null
+
+    private final FSFTBuffer<B> buffer;
+    private final Executor executor;
+
+    /**
+     * Create an asynchronous view of a buffer that runs loads on the common fork-join pool.
+     *
+     * @param buffer the buffer, is not null
+     */
+    public AsyncFSFTBuffer(FSFTBuffer<B> buffer) {
+        this(buffer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an asynchronous view of a buffer.
+     *
+     * @param buffer the buffer, is not null
+     * @param executor runs the loaders given to {@link #get(String, Function)}, is not null
+     */
+    public AsyncFSFTBuffer(FSFTBuffer<B> buffer, Executor executor) {
+        if (buffer == null || executor == null) {
+            throw new IllegalArgumentException("Buffer and executor cannot be null");
+        }
+        this.buffer = buffer;
+        this.executor = executor;
+    }
+
+    /**
+     * @param id the identifier of the object to be retrieved, is not null
+     * @return the object that matches the identifier, or the pending result if the object
+     *         is being loaded; the future fails with a {@link NoSuchElementException} if the
+     *         buffer does not contain the object and is not loading it
+     */
+    public CompletableFuture<B> get(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        return buffer.getAsync(id);
+    }
+
+    /**
+     * Gets the object with the given id, loading it on the executor of this view and adding
+     * it to the buffer if it is missing. Concurrent misses on the same id share one load.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader computes the object with the given id, is not null and must return an
+     *               object whose id is {@code id}; it may block
+     * @return the object that matches the identifier, from the buffer or from the loader.
+     *         The future fails with a {@link NoSuchElementException} if the loader returns
+     *         null, and with the exception thrown by the loader if it throws one
+     */
+    public CompletableFuture<B> get(String id, Function<? super String, ? extends B> loader) {
+        if (id == null || loader == null) {
+            throw new IllegalArgumentException("ID and loader cannot be null");
+        }
+        return buffer.getAsync(id, (key, executor) -> CompletableFuture.supplyAsync(() -> loader.apply(key), executor),
+                executor);
+    }
+
+    /**
+     * Gets the object with the given id, starting an asynchronous load and adding its
+     * result to the buffer if it is missing. Concurrent misses on the same id share one load.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader starts loading the object with the given id, is not null and must not
+     *               block; it is given the executor of this view, and its future must
+     *               complete with an object whose id is {@code id}
+     * @return the object that matches the identifier, from the buffer or from the loader
+     */
+    public CompletableFuture<B> get(String id,
+                                    BiFunction<? super String, ? super Executor, ? extends CompletableFuture<? extends B>> loader) {
+        if (id == null || loader == null) {
+            throw new IllegalArgumentException("ID and loader cannot be null");
+        }
+        return buffer.getAsync(id, loader, executor);
+    }
+
+    /**
+     * Add an object to the buffer; see {@link FSFTBuffer#put(Bufferable)}.
+     *
+     * @param b the object to add, is not null
+     * @return a completed future of true if {@code b} was added and false otherwise
+     */
+    public CompletableFuture<Boolean> put(B b) {
+        return CompletableFuture.completedFuture(buffer.put(b));
+    }
+
+    /**
+     * Add an object to the buffer once it is computed. Lookups of its id return the pending
+     * object until then, as for a load.
+     *
+     * @param id the id of the object, is not null
+     * @param item the pending object, is not null and must complete with an object whose
+     *             id is {@code id}
+     * @return the object, once it has been added to the buffer; if an object with the same
+     *         id is already in the buffer or being loaded, that object instead, and
+     *         {@code item} is ignored
+     */
+    public CompletableFuture<B> put(String id, CompletableFuture<? extends B> item) {
+        if (id == null || item == null) {
+            throw new IllegalArgumentException("ID and item cannot be null");
+        }
+        return buffer.getAsync(id, (key, executor) -> item, executor);
+    }
+
+    /**
+     * Refresh the timeout of an object; see {@link FSFTBuffer#touch(String)}.
+     *
+     * @param id the identifier of the object to "touch", is not null
+     * @return true if successful and false otherwise
+     */
+    public boolean touch(String id) {
+        return buffer.touch(id);
+    }
+
+    /**
+     * @return the buffer behind this view, on which every synchronous operation can be
+     *         called
+     */
+    public FSFTBuffer<B> synchronous() {
+        return buffer;
+    }
+}
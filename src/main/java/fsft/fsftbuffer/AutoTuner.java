@@ -0,0 +1,143 @@
+package fsft.fsftbuffer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the capacity and the timeout of a buffer at runtime by hill climbing, for buffers
+ * created with {@link FSFTBuffer.Builder#withAutoTuning(int, Duration, Duration)}.
+ *
+ * <p>Each interval with enough lookups is scored by its hit rate minus the cost of the
+ * resources the buffer was given: {@link #RESOURCE_COST} for the whole capacity budget
+ * and as much for the longest timeout, in proportion to how much of each is used. Misses
+ * are worth more when they are expensive, so the resource cost is scaled down when the
+ * average load penalty exceeds {@link #REFERENCE_PENALTY_NANOS}. The tuner moves one
+ * setting at a time by {@link #STEP} of its value, keeps the move if the next interval
+ * scores at least as well, and otherwise undoes it and turns that setting around. The
+ * settings therefore settle around the knee of the hit-rate curve, where a further step
+ * buys less hit rate than it costs.</p>
+ *
+ * <p>An {@code AutoTuner} is not thread-safe; it is run by one scheduler thread.</p>
+ */
+class AutoTuner {
+
+    // Abstraction Function:
+    //      AF(r) = a search over (capacity, timeout) in [minCapacity, maxCapacity] x
+    //      [minTimeout, maxTimeout] that next moves setting r.dimension in r.direction, has
+    //      measured the score r.baseline at the current settings (or at the settings before
+    //      the pending move, if r.undo >= 0), and counts lookups from r.last
+
+    // Rep Invariant is
+    //      1 <= minCapacity <= maxCapacity and 1 <= minTimeout <= maxTimeout
+    //      dimension is CAPACITY or TIMEOUT, and each direction is 1 or -1
+    //      undo is -1 or a setting of dimension within its bounds
+
+    /* the fraction by which a setting moves in one step */
+    static final double STEP = 0.1;
+    /* the hit rate that the whole capacity budget, or the longest timeout, must buy */
+    static final double RESOURCE_COST = 0.25;
+    /* the load penalty above which misses are considered expensive */
+    static final long REFERENCE_PENALTY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /* the number of lookups an interval needs before it is scored */
+    static final long MIN_REQUESTS = 1000;
+    /* the smallest setting is the largest one divided by this */
+    private static final int RANGE = 64;
+    private static final int CAPACITY = 0;
+    private static final int TIMEOUT = 1;
+
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final long minTimeout;
+    private final long maxTimeout;
+    private final int[] direction = {1, 1};
+    private int dimension = CAPACITY;
+    private CacheStats last = null;
+    private double baseline = Double.NaN;
+    private long undo = -1;
+
+    /**
+     * @param maxCapacity the largest capacity the buffer may be given, is positive
+     * @param maxTimeout the longest timeout the buffer may be given, is at least a millisecond
+     */
+    AutoTuner(int maxCapacity, Duration maxTimeout) {
+        this.maxCapacity = maxCapacity;
+        this.minCapacity = Math.max(1, maxCapacity / RANGE);
+        this.maxTimeout = maxTimeout.toMillis();
+        this.minTimeout = Math.max(1, this.maxTimeout / RANGE);
+    }
+
+    /**
+     * Score the lookups since the last interval, if there were enough of them, and take one
+     * step of the search.
+     *
+     * @param buffer the tuned buffer, is not null
+     */
+    void tune(FSFTBuffer<?> buffer) {
+        CacheStats stats = buffer.stats();
+        if (last == null) {
+            last = stats;
+            return;
+        }
+        CacheStats interval = stats.minus(last);
+        if (interval.requestCount() < MIN_REQUESTS) {
+            return;
+        }
+        last = stats;
+        double score = score(interval, buffer.capacity(), buffer.timeout().toMillis());
+        if (undo >= 0) {
+            if (score < baseline) {
+                set(buffer, undo);
+                direction[dimension] = -direction[dimension];
+            } else {
+                baseline = score;
+            }
+            undo = -1;
+            dimension = 1 - dimension;
+        } else {
+            baseline = score;
+        }
+        move(buffer);
+    }
+
+    /**
+     * Moves the current setting one step in its direction, or turns it around if it is at
+     * its bound.
+     */
+    private void move(FSFTBuffer<?> buffer) {
+        long current = dimension == CAPACITY ? buffer.capacity() : buffer.timeout().toMillis();
+        long min = dimension == CAPACITY ? minCapacity : minTimeout;
+        long max = dimension == CAPACITY ? maxCapacity : maxTimeout;
+        long target = direction[dimension] > 0
+                ? (long) Math.ceil(current * (1 + STEP))
+                : (long) Math.floor(current * (1 - STEP));
+        target = Math.max(min, Math.min(max, target));
+        if (target == current) {
+            direction[dimension] = -direction[dimension];
+            dimension = 1 - dimension;
+            return;
+        }
+        set(buffer, target);
+        undo = current;
+    }
+
+    private void set(FSFTBuffer<?> buffer, long setting) {
+        if (dimension == CAPACITY) {
+            buffer.resize((int) setting);
+        } else {
+            buffer.setTimeout(Duration.ofMillis(setting));
+        }
+    }
+
+    /**
+     * @param interval the activity of the buffer during an interval
+     * @param capacity the capacity of the buffer during the interval
+     * @param timeout the timeout of the buffer during the interval, in milliseconds
+     * @return the hit rate of the interval minus the cost of the capacity and timeout
+     */
+    private double score(CacheStats interval, int capacity, long timeout) {
+        double penalty = interval.averageLoadPenalty();
+        double scale = penalty > REFERENCE_PENALTY_NANOS ? REFERENCE_PENALTY_NANOS / penalty : 1;
+        double used = (double) capacity / maxCapacity + (double) timeout / maxTimeout;
+        return interval.hitRate() - RESOURCE_COST * scale * used;
+    }
+}
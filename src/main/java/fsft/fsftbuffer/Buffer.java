@@ -0,0 +1,152 @@
+package fsft.fsftbuffer;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The public contract shared by the finite-space, finite-time buffers in this package.
+ * A buffer holds {@link Bufferable} objects, identified by their ids, for a bounded time
+ * and up to a bounded capacity. See {@link FSFTBuffer} for the reference implementation.
+ *
+ * @param <B> the type of objects in the buffer; implements the {@link Bufferable} interface
+ */
+public interface Buffer<B extends Bufferable> {
+
+    /**
+     * Add a value to the buffer, evicting another object if the buffer is full.
+     * If an object with the same id is already in the buffer, its timeout is
+     * refreshed instead.
+     *
+     * @param b the object to add, is not null
+     * @return true if {@code b} was added and false otherwise
+     */
+    boolean put(B b);
+
+    /**
+     * @param id the identifier of the object to be retrieved, is not null
+     * @return the object that matches the identifier from the buffer
+     * @throws NoSuchElementException if the buffer does not contain an unexpired
+     *         object with the given id
+     */
+    B get(String id);
+
+    /**
+     * Gets the object with the given id, loading it with {@code loader} and adding it to
+     * the buffer if it is missing. Concurrent misses for the same id share a single load,
+     * and an exception thrown by the loader is rethrown to every caller waiting on it.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader computes the object with the given id, is not null
+     * @return the object that matches the identifier
+     */
+    B get(String id, Function<? super String, ? extends B> loader);
+
+    /**
+     * Update the last refresh time for the object with the provided id.
+     *
+     * @param id the identifier of the object to "touch", is not null
+     * @return true if successful and false otherwise
+     */
+    boolean touch(String id);
+
+    /**
+     * Remove the object with the provided id from the buffer. A removed object does not
+     * count as evicted or expired.
+     *
+     * @param id the identifier of the object to remove, is not null
+     * @return true if an unexpired object was removed and false otherwise
+     */
+    boolean remove(String id);
+
+    /**
+     * Add a batch of values to the buffer, as if by calling {@link #put(Bufferable)} on
+     * each of them in iteration order. Implementations may add the batch more cheaply
+     * than one object at a time.
+     *
+     * @param items the objects to add, is not null and does not contain null
+     * @return the number of objects that were added
+     */
+    default int putAll(Collection<? extends B> items) {
+        if (items == null) {
+            throw new IllegalArgumentException("Items cannot be null");
+        }
+        int added = 0;
+        for (B b : items) {
+            if (put(b)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Get the objects with the given ids that are in the buffer, as if by calling
+     * {@link #get(String)} on each of them.
+     *
+     * @param ids the identifiers of the objects to be retrieved, is not null and does not
+     *            contain null
+     * @return a map from each id that was found to its object; ids of missing or expired
+     *         objects are left out
+     */
+    default Map<String, B> getAll(Collection<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("IDs cannot be null");
+        }
+        Map<String, B> hits = new LinkedHashMap<>();
+        for (String id : ids) {
+            try {
+                hits.put(id, get(id));
+            } catch (NoSuchElementException e) {
+                // a miss is left out of the result
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Update the last refresh time for each of the objects with the given ids, as if by
+     * calling {@link #touch(String)} on each of them.
+     *
+     * @param ids the identifiers of the objects to "touch", is not null and does not
+     *            contain null
+     * @return the number of objects whose refresh time was updated
+     */
+    default int touchAll(Collection<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("IDs cannot be null");
+        }
+        int touched = 0;
+        for (String id : ids) {
+            if (touch(id)) {
+                touched++;
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * @return a snapshot of all the items currently in the buffer
+     */
+    Set<B> currentItems();
+
+    /**
+     * Returns a stream of the unexpired items in the buffer, for scans and analytics that
+     * should not count as requests. Unless an implementation says otherwise, the stream
+     * is over a snapshot taken by {@link #currentItems()}.
+     *
+     * @return a stream of the items in the buffer
+     */
+    default Stream<B> stream() {
+        return currentItems().stream();
+    }
+
+    /**
+     * @return a snapshot of the counters of the buffer, such as its hits and misses
+     */
+    CacheStats stats();
+}
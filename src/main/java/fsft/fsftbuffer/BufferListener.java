@@ -0,0 +1,52 @@
+package fsft.fsftbuffer;
+
+/**
+ * Receives the events of an {@link FSFTBuffer}. Events are delivered asynchronously and in
+ * batches, on the executor given to {@link FSFTBuffer.Builder#withListener(BufferListener,
+ * java.util.concurrent.Executor)}, in the order in which the buffer produced them. Unless that
+ * executor runs tasks on the calling thread, events are never delivered while the buffer holds
+ * its lock, so a listener may call back into the buffer.
+ *
+ * <p>All methods do nothing by default, so a listener only overrides the events it needs.
+ * Exceptions thrown by a listener are ignored.</p>
+ *
+ * @param <B> the type of objects in the buffer
+ */
+public interface BufferListener<B extends Bufferable> {
+
+    /**
+     * @param item the item that was added to the buffer
+     */
+    default void onPut(B item) {
+    }
+
+    /**
+     * @param item the item that was returned by {@code get}
+     */
+    default void onHit(B item) {
+    }
+
+    /**
+     * @param id the id that {@code get} did not find in the buffer
+     */
+    default void onMiss(String id) {
+    }
+
+    /**
+     * @param item the item whose timeout was refreshed
+     */
+    default void onTouch(B item) {
+    }
+
+    /**
+     * @param item the item that was evicted to make room for another item
+     */
+    default void onEvict(B item) {
+    }
+
+    /**
+     * @param item the item that was removed because it timed out
+     */
+    default void onExpire(B item) {
+    }
+}
@@ -0,0 +1,80 @@
+package fsft.fsftbuffer;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A spliterator over the items of a buffer, layered on a weakly consistent spliterator over
+ * its nodes. Each node is turned into its item as it is reached, and nodes that yield no
+ * item (because they have expired or been removed) are skipped. Splitting is delegated to
+ * the node spliterator, so the items split as well as the nodes do.
+ *
+ * @param <B> the type of objects in the buffer
+ */
+class BufferSpliterator<B> implements Spliterator<B> {
+
+    // Abstraction Function:
+    //      AF(r) = the non-null results of r.items applied to the nodes r.nodes has not
+    //      yet traversed
+
+    // Rep Invariant is
+    //      nodes and items are not null
+
+    private final Spliterator<Node<B>> nodes;
+    private final Function<Node<B>, B> items;
+    /* the item found by the last call of tryAdvance on nodes, or null */
+    private B next;
+
+    /**
+     * @param nodes the nodes to traverse, is not null
+     * @param items gives the item of a node, or null if the node must be skipped; is not null
+     */
+    BufferSpliterator(Spliterator<Node<B>> nodes, Function<Node<B>, B> items) {
+        this.nodes = nodes;
+        this.items = items;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super B> action) {
+        while (nodes.tryAdvance(node -> next = items.apply(node))) {
+            if (next != null) {
+                B item = next;
+                next = null;
+                action.accept(item);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super B> action) {
+        nodes.forEachRemaining(node -> {
+            B item = items.apply(node);
+            if (item != null) {
+                action.accept(item);
+            }
+        });
+    }
+
+    @Override
+    public Spliterator<B> trySplit() {
+        Spliterator<Node<B>> prefix = nodes.trySplit();
+        return prefix == null ? null : new BufferSpliterator<>(prefix, items);
+    }
+
+    /**
+     * @return the estimated number of nodes left, which counts the nodes that will be
+     *         skipped
+     */
+    @Override
+    public long estimateSize() {
+        return nodes.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | CONCURRENT;
+    }
+}
@@ -0,0 +1,26 @@
+package fsft.fsftbuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts objects of a buffer to and from bytes, so that a buffer can keep its objects
+ * outside the Java heap. See {@link FSFTBuffer.Builder#withOffHeapValues(BufferableCodec)}.
+ *
+ * @param <B> the type of objects being converted; implements the {@link Bufferable} interface
+ */
+public interface BufferableCodec<B extends Bufferable> {
+
+    /**
+     * @param item the object to encode, is not null
+     * @return the bytes of {@code item}, from which {@link #decode(ByteBuffer)} can rebuild
+     *         an equivalent object with the same id
+     */
+    byte[] encode(B item);
+
+    /**
+     * @param bytes a read-only buffer whose remaining bytes are exactly the bytes returned by
+     *              {@link #encode(Bufferable)}; it is only valid during the call
+     * @return the object the bytes were encoded from
+     */
+    B decode(ByteBuffer bytes);
+}
@@ -0,0 +1,80 @@
+package fsft.fsftbuffer;
+
+/**
+ * An immutable snapshot of the counters of a buffer, returned by {@link Buffer#stats()}.
+ * The counters only grow, so the activity over an interval is the difference of the
+ * snapshots taken at its ends: {@code later.minus(earlier).hitRate()} is the hit rate of
+ * the requests made in between.
+ *
+ * @param hitCount the number of lookups that found an unexpired item
+ * @param missCount the number of lookups that found no unexpired item
+ * @param putCount the number of items added to the buffer
+ * @param duplicatePutCount the number of {@code put}s of an item that was already in the
+ *                          buffer, which refresh its timeout instead of adding it
+ * @param touchCount the number of successful {@code touch}es
+ * @param evictionCount the number of items evicted to make room for others
+ * @param expiryCount the number of items removed because they expired
+ * @param loadSuccessCount the number of loader calls that returned an item
+ * @param loadFailureCount the number of loader calls that threw an exception or returned
+ *                         no item
+ * @param totalLoadTime the total time spent in loader calls, in nanoseconds
+ */
+public record CacheStats(long hitCount, long missCount, long putCount, long duplicatePutCount,
+                         long touchCount, long evictionCount, long expiryCount,
+                         long loadSuccessCount, long loadFailureCount, long totalLoadTime) {
+
+    /**
+     * @return the number of lookups, hits and misses
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the fraction of lookups that were hits, or 1 if there were no lookups
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the fraction of lookups that were misses, or 0 if there were no lookups
+     */
+    public double missRate() {
+        long requests = requestCount();
+        return requests == 0 ? 0.0 : (double) missCount / requests;
+    }
+
+    /**
+     * @return the average time of a loader call in nanoseconds, or 0 if there were none
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    /**
+     * @param other an earlier snapshot of the same buffer, is not null
+     * @return the activity between {@code other} and this snapshot
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(hitCount - other.hitCount, missCount - other.missCount,
+                putCount - other.putCount, duplicatePutCount - other.duplicatePutCount,
+                touchCount - other.touchCount, evictionCount - other.evictionCount,
+                expiryCount - other.expiryCount, loadSuccessCount - other.loadSuccessCount,
+                loadFailureCount - other.loadFailureCount, totalLoadTime - other.totalLoadTime);
+    }
+
+    /**
+     * @param other a snapshot of another buffer, is not null
+     * @return the combined activity of both buffers
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                putCount + other.putCount, duplicatePutCount + other.duplicatePutCount,
+                touchCount + other.touchCount, evictionCount + other.evictionCount,
+                expiryCount + other.expiryCount, loadSuccessCount + other.loadSuccessCount,
+                loadFailureCount + other.loadFailureCount, totalLoadTime + other.totalLoadTime);
+    }
+}
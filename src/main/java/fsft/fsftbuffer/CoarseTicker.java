@@ -0,0 +1,46 @@
+package fsft.fsftbuffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ticker of {@link Ticker#coarse()}: a copy of {@link System#currentTimeMillis()} that a
+ * daemon thread refreshes every millisecond. The thread starts when this class is first used
+ * and runs for the life of the JVM.
+ */
+class CoarseTicker implements Ticker {
+
+    // Abstraction Function:
+    //      AF(r) = a clock whose current time is r.time
+
+    // Rep Invariant is
+    //      time never decreases
+    //      time is only written by the updater thread, after the constructor returns
+
+    static final CoarseTicker INSTANCE = new CoarseTicker();
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile long time = System.currentTimeMillis();
+
+    private CoarseTicker() {
+        Thread updater = new Thread(this::run, "fsft-coarse-ticker");
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    @Override
+    public long read() {
+        return time;
+    }
+
+    private void run() {
+        while (true) {
+            LockSupport.parkNanos(PERIOD);
+            // the system clock can be set back; the cached time waits for it to catch up
+            long now = System.currentTimeMillis();
+            if (now > time) {
+                time = now;
+            }
+        }
+    }
+}
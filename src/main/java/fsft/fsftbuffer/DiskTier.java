@@ -0,0 +1,297 @@
+package fsft.fsftbuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * A second-level store for the items evicted from a buffer, kept in memory-mapped files.
+ * Items are appended to the active segment file, and an on-heap index maps each id to the
+ * position of its latest record. When the active segment is full, it is sealed and a new
+ * one is started.
+ *
+ * <p>Each item expires a fixed time after it is written. The total size of the segment
+ * files is capped: when a new segment would exceed the cap, the oldest segment is dropped
+ * with all of its items. A sealed segment in which less than half of the bytes belong to
+ * live items is compacted by copying its live items to the active segment and deleting it.</p>
+ *
+ * <p>The tier is a cache, not a store: segment files left in the directory by an earlier
+ * tier are deleted when a new tier is created there.</p>
+ *
+ * <p>A {@code DiskTier} is thread-safe.</p>
+ *
+ * @param <B> the type of objects in the tier; implements the {@link Bufferable} interface
+ */
+class DiskTier<B extends Bufferable> {
+
+    // Abstraction Function:
+    //      AF(r) = the map from each id in r.index.keySet() to the item decoded from the
+    //      record at r.index.get(id), which expires at the time stored in that record
+
+    // Rep Invariant is
+    //      segments is not empty, and its last segment is the only one that is not sealed
+    //      segments.size() * segmentSize <= maxBytes
+    //      every location in index points to the start of a record of a segment in segments
+    //      the liveBytes of a segment is the total length of its records pointed to by index
+
+    /* the default segment size is 64 MiB */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".l2";
+    /* length, expiry time, and id length */
+    private static final int HEADER = Integer.BYTES + Long.BYTES + Short.BYTES;
+
+    private static class Segment {
+        final int number;
+        final Path path;
+        final MappedByteBuffer data;
+        int writePosition = 0;
+        long liveBytes = 0;
+
+        Segment(int number, Path path, MappedByteBuffer data) {
+            this.number = number;
+            this.path = path;
+            this.data = data;
+        }
+    }
+
+    private final Path directory;
+    private final BufferableCodec<B> codec;
+    private final long maxBytes;
+    private final long timeout;
+    private final int segmentSize;
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Long> index = new HashMap<>();
+    private int nextSegment = 0;
+
+    /**
+     * Create an empty tier.
+     *
+     * @param directory the directory holding the segment files, is not null
+     * @param codec converts the items to and from bytes, is not null
+     * @param maxBytes the maximum total size of the segment files, is at least
+     *                 {@code 2 * segmentSize}
+     * @param timeout how long an item stays in the tier, is positive
+     * @param segmentSize the size of each segment file
+     * @throws UncheckedIOException if the directory cannot be used
+     */
+    DiskTier(Path directory, BufferableCodec<B> codec, long maxBytes, Duration timeout, int segmentSize) {
+        if (maxBytes < 2L * segmentSize || segmentSize <= HEADER) {
+            throw new IllegalArgumentException("Disk tier must hold at least two segments");
+        }
+        this.directory = directory;
+        this.codec = codec;
+        this.maxBytes = maxBytes;
+        this.timeout = timeout.toMillis();
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path path : stale) {
+                    Files.delete(path);
+                }
+            }
+            startSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Add an item, replacing any item with the same id. An item whose record does not fit
+     * in a segment, or that cannot be written, is dropped.
+     *
+     * @param item the item to add, is not null
+     * @param now the current time in milliseconds
+     */
+    synchronized void put(B item, long now) {
+        byte[] id = item.id().getBytes(StandardCharsets.UTF_8);
+        byte[] value = codec.encode(item);
+        int length = HEADER + id.length + value.length;
+        if (id.length > Short.MAX_VALUE || length > segmentSize) {
+            return;
+        }
+        remove(item.id(), now);
+        try {
+            Segment segment = reserve(length);
+            ByteBuffer data = segment.data;
+            int position = segment.writePosition;
+            data.putInt(position, length);
+            data.putLong(position + Integer.BYTES, now + timeout);
+            data.putShort(position + Integer.BYTES + Long.BYTES, (short) id.length);
+            data.put(position + HEADER, id);
+            data.put(position + HEADER + id.length, value);
+            append(segment, item.id(), length);
+        } catch (IOException e) {
+            // the item is simply not kept
+        }
+    }
+
+    /**
+     * Read an item from the tier, leaving it there. An expired item is left for the
+     * compaction or the dropping of its segment to remove, so that a read never compacts.
+     *
+     * @param id the id of the item
+     * @param now the current time in milliseconds
+     * @return the item with the given id, or null if the tier has no unexpired item with
+     *         that id
+     */
+    synchronized B get(String id, long now) {
+        Long location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+        Segment segment = segments.get(segmentOf(location));
+        int position = positionOf(location);
+        if (now > segment.data.getLong(position + Integer.BYTES)) {
+            return null;
+        }
+        int length = segment.data.getInt(position);
+        int valueStart = HEADER + segment.data.getShort(position + Integer.BYTES + Long.BYTES);
+        return codec.decode(segment.data.slice(position + valueStart, length - valueStart).asReadOnlyBuffer());
+    }
+
+    /**
+     * Remove an item from the tier, if it is there.
+     *
+     * @param id the id of the item
+     * @param now the current time in milliseconds
+     */
+    synchronized void remove(String id, long now) {
+        Long location = index.remove(id);
+        if (location == null) {
+            return;
+        }
+        Segment segment = segments.get(segmentOf(location));
+        segment.liveBytes -= segment.data.getInt(positionOf(location));
+        if (segment != segments.lastEntry().getValue() && segment.liveBytes < segmentSize / 2) {
+            compact(segment, now);
+        }
+    }
+
+    /**
+     * @return the number of items in the tier, including the expired items that have not
+     *         been removed yet
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of segment files of the tier
+     */
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Finds room for a record in the active segment, starting a new segment if needed.
+     *
+     * @param length the length of the record, is at most segmentSize
+     * @return the segment the record should be written to at its write position
+     */
+    private Segment reserve(int length) throws IOException {
+        Segment active = segments.lastEntry().getValue();
+        if (active.writePosition + length <= segmentSize) {
+            return active;
+        }
+        while ((segments.size() + 1L) * segmentSize > maxBytes) {
+            drop(segments.firstEntry().getValue());
+        }
+        return startSegment();
+    }
+
+    /**
+     * Records that a record has been written at the write position of a segment.
+     */
+    private void append(Segment segment, String id, int length) {
+        index.put(id, locationOf(segment.number, segment.writePosition));
+        segment.writePosition += length;
+        segment.liveBytes += length;
+    }
+
+    /**
+     * Copies the live, unexpired records of a sealed segment to the active segment, and
+     * deletes the sealed segment.
+     *
+     * @param segment a sealed segment
+     * @param now the current time in milliseconds
+     */
+    private void compact(Segment segment, long now) {
+        segments.remove(segment.number);
+        for (int position = 0; position < segment.writePosition; ) {
+            int length = segment.data.getInt(position);
+            String id = idAt(segment, position);
+            if (index.remove(id, locationOf(segment.number, position))) {
+                if (now <= segment.data.getLong(position + Integer.BYTES)) {
+                    try {
+                        Segment active = reserve(length);
+                        active.data.put(active.writePosition, segment.data, position, length);
+                        append(active, id, length);
+                    } catch (IOException e) {
+                        // the item is simply not kept
+                    }
+                }
+            }
+            position += length;
+        }
+        delete(segment);
+    }
+
+    /**
+     * Removes the oldest segment and all of its items.
+     */
+    private void drop(Segment segment) {
+        segments.remove(segment.number);
+        for (int position = 0; position < segment.writePosition; position += segment.data.getInt(position)) {
+            index.remove(idAt(segment, position), locationOf(segment.number, position));
+        }
+        delete(segment);
+    }
+
+    private Segment startSegment() throws IOException {
+        int number = nextSegment++;
+        Path path = directory.resolve(PREFIX + number + SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segments.put(number, segment);
+            return segment;
+        }
+    }
+
+    private static void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // the file is unmapped and can be deleted once the segment is garbage collected
+        }
+    }
+
+    private static String idAt(Segment segment, int position) {
+        byte[] id = new byte[segment.data.getShort(position + Integer.BYTES + Long.BYTES)];
+        segment.data.get(position + HEADER, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private static long locationOf(int segment, int position) {
+        return ((long) segment << 32) | position;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int positionOf(long location) {
+        return (int) location;
+    }
+}
@@ -0,0 +1,43 @@
+package fsft.fsftbuffer;
+
+import java.time.Duration;
+
+/**
+ * Computes how long each object stays in a buffer, so that objects can have different
+ * timeouts, for example a long one for pages that rarely change and a short one for
+ * volatile pages. See {@link FSFTBuffer.Builder#withExpiry(Expiry)}.
+ *
+ * <p>A buffer asks its expiry policy for a new lifetime when an object is added, when an
+ * object that is already in the buffer is put again, and when it is touched. By default,
+ * the last two give the object the same lifetime as a new object.</p>
+ *
+ * @param <B> the type of objects in the buffer
+ */
+public interface Expiry<B> {
+
+    /**
+     * @param item the object being added, is not null
+     * @return how long {@code item} stays in the buffer; is not null and is not negative
+     */
+    Duration expireAfterCreate(B item);
+
+    /**
+     * @param item the new instance of an object that is already in the buffer, is not null
+     * @param remaining how long the object had left before this update
+     * @return how long {@code item} stays in the buffer from now; is not null and is not
+     *         negative
+     */
+    default Duration expireAfterUpdate(B item, Duration remaining) {
+        return expireAfterCreate(item);
+    }
+
+    /**
+     * @param item the object being touched, is not null
+     * @param remaining how long the object had left before it was touched
+     * @return how long {@code item} stays in the buffer from now; is not null and is not
+     *         negative
+     */
+    default Duration expireAfterTouch(B item, Duration remaining) {
+        return expireAfterCreate(item);
+    }
+}
@@ -1,16 +1,37 @@
 package fsft.fsftbuffer;
 
+import fsft.fsftbuffer.eviction.EvictionPolicy;
+import fsft.fsftbuffer.eviction.LruPolicy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A finite-space, finite-time buffer of objects. Each object in the buffer is {@link Bufferable}
  * (has a unique id). A buffer has a capacity, which is the number of objects it can hold
- * at a time, and a timeout duration, which is the duration of time an object can remain
+ * at a time (or their total weight, for a buffer built with a {@link Weigher}), and a
+ * timeout duration, which is the duration of time an object can remain
  * in the buffer before it is considered "expired" and is removed. When the buffer is full,
- * adding a new item evicts the LRU (least recently used) item from the buffer. Items are
+ * adding a new item evicts the LRU (least recently used) item from the buffer, or the item
+ * chosen by another {@link EvictionPolicy} given to the {@link Builder}. Items are
  * considered used if they are "gotten" by calling the {@code get} method. Items can be
  * "refreshed" (increase their lifespan) by calling the {@code touch} method on them.
  * Attempting to call {@code put} on an existing object in the buffer also refreshes its
@@ -21,8 +42,13 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  *   <li>{@link #put(Bufferable)} puts a new object in the buffer</li>
  *   <li>{@link #get(String)} gets the item in the buffer with the given id, effectively
  *   "using" it</li>
+ *   <li>{@link #get(String, Function)} gets the item with the given id, loading and adding
+ *   it if it is missing; concurrent misses for the same id share a single load</li>
  *   <li>{@link #touch(String)} updates the expiry/timeout time of the object with the
  *   given id to (current time) + {@link #delta}</li>
+ *   <li>{@link #putAll(Collection)}, {@link #getAll(Collection)}, and
+ *   {@link #touchAll(Collection)} do the same for a batch of objects or ids, taking the
+ *   lock and reading the clock once per batch instead of once per object</li>
  * </ul>
  *
  * <p>Notes:</p>
@@ -30,46 +56,166 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  *     <li>{@code FSFTBuffer} is thread-safe. Instances of this class can be accessed by
  *     multiple threads concurrently</li>
  *     <li>When the buffer reaches its capacity and a new object is added, the buffer evicts
- *     the least recently used (LRU) item</li>
- *     <li>Buffer capacity and delta are fixed at creation and cannot be modified after</li>
+ *     the least recently used (LRU) item, unless it was built with a different policy from
+ *     {@link fsft.fsftbuffer.eviction}. Expired items are always removed first</li>
+ *     <li>Buffer capacity and delta are set at creation, and can be changed later with
+ *     {@link #resize(int)} and {@link #setTimeout(Duration)}</li>
+ *     <li>A buffer created with {@link Builder#withLockFreeReads()} serves {@code get} hits
+ *     without taking its lock. The accesses are recorded in a lossy read buffer and applied
+ *     to the eviction policy in batches, so under heavy concurrent reads the eviction order
+ *     is approximate</li>
+ *     <li>Puts, hits, misses, touches, evictions, and expirations can be observed by
+ *     registering a {@link BufferListener} with {@link Builder#withListener(BufferListener)}.
+ *     Events are delivered asynchronously, outside the buffer's lock</li>
+ *     <li>A buffer created with {@link Builder#withTinyLfuAdmission()} estimates how often
+ *     each id is requested. When the buffer is full, a new object only replaces the
+ *     policy's victim if it is estimated to be requested more often; otherwise {@code put}
+ *     rejects it.
+ *     This keeps popular items from being pushed out by a stream of one-off requests</li>
+ *     <li>A buffer created with {@link Builder#withRefreshAhead(double, Function)} reloads
+ *     items in the background once a fraction of their lifetime has passed. A {@code get}
+ *     in that window returns the current item immediately and starts the reload, so items
+ *     that keep being requested are replaced before they expire</li>
+ *     <li>A buffer created with {@link Builder#withOffHeapValues(BufferableCodec)} keeps its
+ *     items in direct memory, serialized by a {@link BufferableCodec}, so that a buffer of
+ *     several gigabytes does not grow the heap. Only the ids and a few words of bookkeeping
+ *     per item stay on the heap</li>
+ *     <li>A buffer created with {@link Builder#withDiskTier(Path, BufferableCodec, long, Duration)}
+ *     writes evicted items to memory-mapped files, and a {@code get} that misses in memory
+ *     finds them there instead of reporting a miss</li>
+ *     <li>{@link #snapshot(Path, BufferableCodec)} saves the items, their remaining lifetimes,
+ *     and their eviction order to a file, and {@link #restore(Path, BufferableCodec)} or
+ *     {@link #restoreAsync(Path, BufferableCodec, Executor)} warms a new buffer up from it</li>
+ *     <li>{@link #put(Bufferable, Duration)} and {@link Builder#withExpiry(Expiry)} give
+ *     objects their own timeouts. The timing wheel handles any mix of timeouts in amortized
+ *     constant time per object</li>
+ *     <li>{@link #stats()} returns the hit, miss, put, touch, eviction, expiry, and load
+ *     counts of the buffer</li>
+ *     <li>Expiry is decided by the time read from a {@link Ticker}. By default this is
+ *     {@link Ticker#system()}; {@link Builder#withTicker(Ticker)} chooses another one, such
+ *     as the {@link Ticker#coarse() coarse ticker}, which spares every operation a read of
+ *     the system clock at the cost of a background thread</li>
+ *     <li>Expired items are removed lazily, when the buffer is full or its items are
+ *     listed. A buffer created with {@link Builder#withExpirySweeper(Duration)} also removes
+ *     them periodically on a background thread shared by all buffers</li>
+ *     <li>A buffer created with {@link Builder#withSoftValues()} holds its items softly, so
+ *     the garbage collector shrinks it when the heap runs low</li>
+ *     <li>{@link #stream()} and {@link #spliterator()} scan the items without locking the
+ *     buffer, unlike {@link #currentItems()}, which copies them under the lock</li>
+ *     <li>{@link #resize(int)} and {@link #setTimeout(Duration)} change the capacity and the
+ *     timeout of a running buffer, and {@link Builder#withAutoTuning(int, Duration, Duration)}
+ *     lets the buffer tune both from its hit rate</li>
+ *     <li>An {@link AsyncFSFTBuffer} views the buffer through {@link CompletableFuture}s, so
+ *     that a lookup of an item that is being loaded returns the pending load instead of
+ *     waiting for it</li>
  * </ul>
  *
  * @param <B> the type of objects in the buffer; implements the {@link Bufferable} interface
  * */
 
-public class FSFTBuffer<B extends Bufferable> {
+public class FSFTBuffer<B extends Bufferable> implements Buffer<B> {
 
     // Abstraction Function:
     //      AF(r) = A finite-space finite-time buffer where:
-    //      - r.capacity is the capacity of the buffer, specified during creation
-    //      - r.delta is the timeout duration, aka the amount of time an object can spend in
-    //      the buffer
-    //      - r.timeoutMap maps the items to their expiry times
-    //      - r.idMap maps the items' ids to the item itself
-    //      - r.lastUseQueue tracks the use frequency of items
+    //      - r.capacity is the current capacity of the buffer, as the maximum total weight
+    //      of its items
+    //      - r.weigher gives the weight of each item (1 unless specified during creation)
+    //      - r.totalWeight is the total weight of the items in the buffer
+    //      - r.delta is the current timeout duration, aka the amount of time an object
+    //      added now can spend in the buffer, unless r.expiry or put(b, lifetime) gives the object another lifetime
+    //      - r.idMap maps the items' ids to the node holding the item, its expiry time,
+    //      and the time that expiry time was set, in the time of r.ticker
+    //      - r.timerWheel indexes the nodes by expiry time
+    //      - r.loads maps the ids being loaded by get(id, loader) or getAsync to the
+    //      pending result, and r.refreshing holds the ids being reloaded ahead of expiry
+    //      - r.policy decides which item to evict, once the reads recorded in r.readBuffer
+    //      (if any) are applied to it
+    //      - r.diskTier (if any) holds the items evicted from r.idMap that have not been
+    //      requested again
+    //      - the item of a node is r.codec.decode of its block in r.slabs if the node is an
+    //      OffHeapNode, the referent of node.value if it is a SoftNode, and node.item
+    //      otherwise; a SoftNode whose referent has been cleared is not in the buffer
 
     // Rep Invariant is
     //      capacity > 0
+    //      0 <= totalWeight <= capacity
+    //      totalWeight is the sum of the weights of the nodes in idMap.values()
     //      delta is not null and is a positive time duration
-    //      lastUseQueue, timeoutMap, and idMap are not null
-    //      lastUseQueue does not contain null values
-    //      timeoutMap and idMap do not contain null keys or values
-    //      lastUseQueue, timeoutMap.keySet(), and idMap.values() contain the same elements
+    //      capacity and delta are only written while holding lock
+    //      policy, timerWheel, and idMap are not null
+    //      idMap does not contain null keys or values
+    //      policy tracks exactly the ids in idMap.keySet()
+    //      the nodes scheduled in timerWheel are exactly the nodes in idMap.values()
+    //      policy and timerWheel are only accessed while holding lock
+    //      codec and slabs are both null or both not null
+    //      the nodes in idMap.values() are OffHeapNodes if slabs is not null, and each
+    //      holds a distinct block allocated from slabs
+    //      slabs is only accessed while holding lock
+    //      diskTier, once the writes in diskWrites are applied to it, does not hold an
+    //      item with the same id as an item in idMap
+    //      diskWrites is only added to while holding lock, and only applied by the one
+    //      task that set diskFlushing
+    //      the nodes in idMap.values() are SoftNodes if and only if collected is not null
 
     /* the default buffer size is 32 objects */
     public static final int DEFAULT_CAPACITY = 32;
     /* the default timeout value is 180 seconds */
     public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(180);
+    /* the number of items restored from a snapshot per acquisition of the lock */
+    private static final int RESTORE_BATCH = 256;
+    /* the span of time, in milliseconds, that the background sweeper expires per acquisition
+       of the lock, which bounds the number of entries removed at once */
+    private static final long SWEEP_STEP = 1024;
+    /* the longest a single background sweep of a buffer runs, in nanoseconds; a buffer with
+       more expired items than fit in one slice is caught up over several periods */
+    private static final long SWEEP_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
-    private final Map<B, Long> timeoutMap = new ConcurrentHashMap<>();
-    private final Map<String, B> idMap = new ConcurrentHashMap<>();
-    private final Queue<B> lastUseQueue = new ConcurrentLinkedQueue<>();
+    private final Map<String, Node<B>> idMap = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<B>> loads = new ConcurrentHashMap<>();
+    /* kept apart from loads, since a reload may fail or return nothing while the current item stays */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final StatsCounter stats = new StatsCounter();
+    private final EvictionPolicy policy;
+    private final TimerWheel<B> timerWheel;
+    private final ReentrantLock lock = new ReentrantLock();
+    /* null unless the buffer serves hits without locking */
+    private final ReadBuffer<B> readBuffer;
+    /* null unless a listener is registered */
+    private final ListenerDispatcher<B> dispatcher;
+    /* null unless new items must pass the TinyLFU admission filter */
+    private final FrequencySketch sketch;
+    /* null unless items are refreshed ahead of their expiry */
+    private final Function<? super String, ? extends B> refreshLoader;
+    private final Executor refreshExecutor;
+    /* the fraction of its lifetime after which an item becomes eligible for refresh */
+    private final double refreshFraction;
+    /* null unless items are stored off the heap */
+    private final BufferableCodec<B> codec;
+    private final SlabAllocator slabs;
+    /* null unless evicted items are kept on disk */
+    private final DiskTier<B> diskTier;
+    /* the latest write to diskTier decided for each id while holding lock, applied on
+       diskExecutor, since a write may compact a whole segment; a write stays here until it
+       has been applied, so that a lookup finds it before the stale state of diskTier */
+    private final Map<String, DiskWrite<B>> diskWrites = new ConcurrentHashMap<>();
+    private final Executor diskExecutor;
+    /* true while a task applying diskWrites is scheduled or running */
+    private final AtomicBoolean diskFlushing = new AtomicBoolean(false);
+    /* null unless items are softly referenced; receives the references the garbage
+       collector has cleared */
+    private final ReferenceQueue<B> collected;
 
-    private final int capacity;
-    private final Duration delta;
+    private final Ticker ticker;
+    /* only written while holding lock */
+    private volatile int capacity;
+    private volatile Duration delta;
+    private final Weigher<? super B> weigher;
+    /* null unless the lifetime of each item is computed separately */
+    private final Expiry<? super B> expiry;
+    private long totalWeight = 0;
 
     /**
-     * Create a buffer with a fixed capacity and a timeout value.
+     * Create a buffer with an initial capacity and timeout value.
      * Objects in the buffer that have not been refreshed within the
      * timeout period are removed from the cache.
      *
@@ -78,8 +224,7 @@ public class FSFTBuffer<B extends Bufferable> {
      *                 be in the buffer before it times out
      */
     public FSFTBuffer(int capacity, Duration delta) {
-        this.capacity = capacity;
-        this.delta = delta;
+        this(new Builder<B>().withCapacity(capacity).withTimeout(delta));
     }
 
     /**
@@ -89,35 +234,343 @@ public class FSFTBuffer<B extends Bufferable> {
         this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT);
     }
 
+    /**
+     * Create a buffer with the options collected by a builder.
+     *
+     * @param builder the builder holding the options of the buffer
+     */
+    private FSFTBuffer(Builder<B> builder) {
+        this.ticker = builder.ticker;
+        this.timerWheel = new TimerWheel<>(ticker.read());
+        this.capacity = builder.capacity;
+        this.delta = builder.delta;
+        this.weigher = builder.weigher;
+        this.expiry = builder.expiry;
+        this.policy = builder.policyFactory.get();
+        this.policy.setCapacity(capacity);
+        this.readBuffer = builder.lockFreeReads ? new ReadBuffer<>() : null;
+        this.dispatcher = builder.listener == null ? null
+                : new ListenerDispatcher<>(builder.listener, builder.listenerExecutor);
+        this.sketch = builder.tinyLfuAdmission ? new FrequencySketch(capacity) : null;
+        this.refreshLoader = builder.refreshLoader;
+        this.refreshExecutor = builder.refreshExecutor;
+        this.refreshFraction = builder.refreshFraction;
+        this.codec = builder.codec;
+        this.slabs = builder.codec == null ? null : new SlabAllocator(SlabAllocator.DEFAULT_SLAB_SIZE);
+        this.diskTier = builder.diskDirectory == null ? null : new DiskTier<>(builder.diskDirectory,
+                builder.diskCodec, builder.diskBytes, builder.diskTimeout,
+                (int) Math.min(DiskTier.DEFAULT_SEGMENT_SIZE, builder.diskBytes / 8));
+        this.diskExecutor = builder.diskExecutor;
+        this.collected = builder.softValues ? new ReferenceQueue<>() : null;
+    }
+
     /**
      * Add a value to the buffer.
      * If the buffer is full then remove the least recently accessed
-     * object to make room for the new object.
+     * object (or the victim of the buffer's eviction policy) to make
+     * room for the new object. With a weigher, objects are removed until
+     * the new object fits, and an object heavier than the capacity is
+     * never added.
      * This method can be used to replace an object in the buffer with
      * a newer instance. {@code b} is uniquely identified by its id,
      * {@code b.id()}.
+     * If the buffer uses TinyLFU admission and is full, {@code b} is only
+     * added if it is requested more often than the object it would replace.
+     *
+     * @return true if {@code b} was added and false otherwise
      */
+    @Override
     public boolean put(B b) {
         if (b == null) {
             throw new IllegalArgumentException("Object cannot be null");
         }
-        synchronized (this) {
-            if (touch(b.id())) { // checks for existence and updates timeout if existing
-                System.out.println("attempted to add duplicate: " + b.id());
-                return false;
+        return add(b, ticker.read(), null, false);
+    }
+
+    /**
+     * Add a value to the buffer with its own timeout, which overrides the timeout of the
+     * buffer and its {@link Expiry}. If an object with the same id is already in the
+     * buffer, its timeout is set to {@code lifetime} instead.
+     *
+     * @param b the object to add, is not null
+     * @param lifetime how long {@code b} stays in the buffer, is not null and is not negative
+     * @return true if {@code b} was added and false otherwise
+     */
+    public boolean put(B b, Duration lifetime) {
+        if (b == null) {
+            throw new IllegalArgumentException("Object cannot be null");
+        }
+        if (lifetime == null || lifetime.isNegative()) {
+            throw new IllegalArgumentException("Lifetime must be a non-negative duration");
+        }
+        return add(b, ticker.read(), lifetime, false);
+    }
+
+    /**
+     * Adds a value to the buffer, as described by {@link #put(Bufferable)}.
+     *
+     * @param b the object to add, is not null
+     * @param now the current time in milliseconds
+     * @param lifetime how long {@code b} stays in the buffer, or null to use the timeout
+     *                 of the buffer
+     * @param promoted true if {@code b} comes from the disk tier
+     * @return true if {@code b} was added and false otherwise
+     */
+    private boolean add(B b, long now, Duration lifetime, boolean promoted) {
+        int weight = weigh(b);
+        byte[] encoded = encode(b);
+        lock.lock();
+        try {
+            drainCollected();
+            if (totalWeight + weight > capacity) {
+                maintain(now);
+            }
+            return insert(b, encoded, weight, now, lifetime, promoted);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Adds a batch of values to the buffer, as if by calling {@link #put(Bufferable)} on
+     * each of them in iteration order, but taking the lock and reading the clock once and
+     * removing expired items at most once for the whole batch. Without an {@link Expiry},
+     * every object added by the batch gets the same expiry time.
+     *
+     * @param items the objects to add, is not null and does not contain null
+     * @return the number of objects that were added
+     */
+    @Override
+    public int putAll(Collection<? extends B> items) {
+        if (!isBatch(items)) {
+            throw new IllegalArgumentException("Items cannot be null");
+        }
+        List<B> batch = new ArrayList<>(items);
+        int[] weights = new int[batch.size()];
+        byte[][] encoded = new byte[batch.size()][];
+        long batchWeight = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weigh(batch.get(i));
+            encoded[i] = encode(batch.get(i));
+            batchWeight += weights[i];
+        }
+        lock.lock();
+        try {
+            long now = ticker.read();
+            drainCollected();
+            if (totalWeight + batchWeight > capacity) {
+                maintain(now);
             }
-            if (lastUseQueue.size() >= capacity) {
-                System.out.println("BUFFER FULL");
-                if (!refresh()) {
-                    removeLRU();
+            int added = 0;
+            for (int i = 0; i < weights.length; i++) {
+                if (insert(batch.get(i), encoded[i], weights[i], now, null, false)) {
+                    added++;
                 }
             }
-            timeoutMap.put(b, System.currentTimeMillis() + delta.toMillis());
-            lastUseQueue.add(b);
-            idMap.put(b.id(), b);
-            System.out.println("added item " + b.id() + " - " + lastUseQueue.size() + " items in buffer");
+            return added;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @param batch the argument of a bulk operation
+     * @return true if {@code batch} is not null and does not contain null, false otherwise
+     */
+    static boolean isBatch(Collection<?> batch) {
+        if (batch == null) {
+            return false;
+        }
+        for (Object element : batch) {
+            if (element == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param b the object to weigh, is not null
+     * @return the weight of {@code b}, is not negative
+     */
+    private int weigh(B b) {
+        int weight = weigher.weigh(b);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight cannot be negative");
+        }
+        return weight;
+    }
+
+    /**
+     * @param b the object to encode, is not null
+     * @return the bytes of {@code b} if the buffer stores its items off the heap, or null
+     */
+    private byte[] encode(B b) {
+        if (codec == null) {
+            return null;
+        }
+        byte[] encoded = codec.encode(b);
+        if (encoded == null) {
+            throw new IllegalArgumentException("Codec returned no bytes");
+        }
+        return encoded;
+    }
+
+    /**
+     * Creates the node of a new item, copying the item off the heap if the buffer stores
+     * its items there. Must be called while holding the lock.
+     *
+     * @param b the item
+     * @param encoded the bytes of {@code b}, or null if the buffer stores its items on the heap
+     * @param weight the weight of {@code b}
+     * @param now the current time in milliseconds
+     * @param expiryTime the time, in milliseconds, after which the item is expired
+     * @return an unlinked node holding {@code b}
+     */
+    private Node<B> newNode(B b, byte[] encoded, int weight, long now, long expiryTime) {
+        Node<B> node;
+        if (slabs != null) {
+            node = new OffHeapNode<>(b.id(), slabs.allocate(encoded), weight, expiryTime);
+        } else if (collected != null) {
+            node = new SoftNode<>(b.id(), b, weight, expiryTime, collected);
+        } else {
+            node = new Node<>(b.id(), b, weight, expiryTime);
+        }
+        node.writeTime = now;
+        return node;
+    }
+
+    /**
+     * Gets the item held by a node, decoding it if it is stored off the heap. Must be called
+     * while holding the lock if the buffer stores its items off the heap.
+     *
+     * @param node a node of the buffer
+     * @return the item held by {@code node}, or null if the item was softly referenced and
+     *         the garbage collector has reclaimed it
+     */
+    private B itemOf(Node<B> node) {
+        if (node instanceof OffHeapNode<B> offHeap) {
+            return codec.decode(slabs.read(offHeap.address));
+        }
+        if (node instanceof SoftNode<B> soft) {
+            return soft.value.get();
+        }
+        return node.item;
+    }
+
+    /**
+     * Removes the nodes whose softly referenced items the garbage collector has reclaimed,
+     * counting them as evictions. No listener event is sent, since the item is gone. Must
+     * be called while holding the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private void drainCollected() {
+        if (collected == null) {
+            return;
+        }
+        Reference<? extends B> reference;
+        while ((reference = collected.poll()) != null) {
+            removeCollected(((SoftNode.Value<B>) reference).node);
+        }
+    }
+
+    /**
+     * Removes a node whose softly referenced item the garbage collector has reclaimed, if
+     * it is still in the buffer. A reference can be seen cleared before it is enqueued, so
+     * a node found this way is removed at once. Must be called while holding the lock.
+     *
+     * @param node a node whose item has been reclaimed
+     */
+    private void removeCollected(Node<B> node) {
+        if (idMap.remove(node.id, node)) {
+            totalWeight -= node.weight;
+            policy.recordRemoval(node.id);
+            timerWheel.deschedule(node);
+            stats.recordEviction();
+        }
+    }
+
+    /**
+     * Frees the off-heap memory of a node that has been removed from the buffer. Must be
+     * called while holding the lock.
+     *
+     * @param node the removed node
+     */
+    private void release(Node<B> node) {
+        if (slabs != null) {
+            slabs.free(((OffHeapNode<B>) node).address);
+        }
+    }
+
+    /**
+     * Applies the pending reads to the eviction policy and removes the expired items, so
+     * that a full buffer evicts a live item only when no expired item can make room.
+     * Must be called while holding the lock.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void maintain(long now) {
+        drainReadBuffer();
+        drainCollected();
+        refresh(now);
+    }
+
+    /**
+     * Adds a value to the buffer, evicting the policy's victims until it fits. Must be
+     * called while holding the lock.
+     *
+     * @param b the object to add, is not null
+     * @param encoded the bytes of {@code b}, or null if the buffer stores its items on the heap
+     * @param weight the weight of {@code b}
+     * @param now the current time in milliseconds
+     * @param lifetime how long {@code b} stays in the buffer, or null to use the timeout
+     *                 of the buffer
+     * @param promoted true if {@code b} comes from the disk tier, in which case it is not
+     *                 counted or reported as a put, and does not replace an item in memory
+     * @return true if {@code b} was added and false otherwise
+     */
+    private boolean insert(B b, byte[] encoded, int weight, long now, Duration lifetime, boolean promoted) {
+        if (sketch != null) {
+            sketch.increment(b.id());
+        }
+        if (promoted && idMap.containsKey(b.id())) { // the copy in memory is the newer one
+            writeToDisk(b.id(), null, now);
+            return false;
+        }
+        if (!promoted && extend(b.id(), b, now, lifetime)) { // checks for existence and updates timeout if existing
+            stats.recordDuplicatePut();
+            return false;
+        }
+        if (weight > capacity) {
+            return false;
+        }
+        long expiryTime = expiryTime(now, lifetime != null ? lifetime
+                : expiry != null ? expiry.expireAfterCreate(b) : delta);
+        boolean admitted = false;
+        while (totalWeight + weight > capacity) {
+            String victim = policy.victim(b.id());
+            if (!admitted && !admit(b, victim)) {
+                return false;
+            }
+            admitted = true;
+            evict(victim, now);
+        }
+        Node<B> node = newNode(b, encoded, weight, now, expiryTime);
+        policy.recordInsert(b.id());
+        timerWheel.schedule(node);
+        idMap.put(b.id(), node);
+        totalWeight += weight;
+        if (diskTier != null) {
+            writeToDisk(b.id(), null, now); // the copy on disk is now stale
+        }
+        if (promoted) {
             return true;
         }
+        stats.recordPut();
+        if (dispatcher != null) {
+            dispatcher.put(b);
+        }
+        return true;
     }
 
     /**
@@ -125,36 +578,518 @@ public class FSFTBuffer<B extends Bufferable> {
      * @return the object that matches the identifier from the
      * buffer
      */
+    @Override
     public B get(String id) {
         if (id == null) {
             throw new IllegalArgumentException("ID cannot be null");
         }
-        if (!idMap.containsKey(id)) {
+        B item = getIfPresent(id);
+        if (item == null) {
             throw new NoSuchElementException("Buffer does not contain item with given id");
         }
-        synchronized (this) {
-            B item = idMap.get(id);
-            if (isExpired(idMap.get(id))) {
-                throw new NoSuchElementException("Buffer does not contain item with given id");
+        return item;
+    }
+
+    /**
+     * Gets the item with the given id, loading it and adding it to the buffer if it is
+     * missing. When several threads miss on the same id at the same time, only one of them
+     * calls {@code loader}; the others wait for its result. If the load fails, every waiting
+     * thread receives the exception and nothing is added, so the next call loads again.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader computes the object with the given id, is not null and must return an
+     *               object whose id is {@code id}
+     * @return the object that matches the identifier, from the buffer or from the loader.
+     *         A loaded object is returned even if the buffer declines to keep it
+     * @throws NoSuchElementException if the loader returns null
+     */
+    @Override
+    public B get(String id, Function<? super String, ? extends B> loader) {
+        if (id == null || loader == null) {
+            throw new IllegalArgumentException("ID and loader cannot be null");
+        }
+        B item = getIfPresent(id);
+        if (item != null) {
+            return item;
+        }
+        CompletableFuture<B> load = new CompletableFuture<>();
+        CompletableFuture<B> inFlight = loads.putIfAbsent(id, load);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            item = peek(id); // a load may have finished since the miss above
+            if (item != null) {
+                load.complete(item);
+                return item;
             }
-            lastUseQueue.remove(item);
-            lastUseQueue.add(item);
-        System.out.println("got item " + id);
-            return idMap.get(id);
+            item = load(loader, id);
+            if (item == null) {
+                throw new NoSuchElementException("Loader returned no item with given id");
+            }
+            if (!id.equals(item.id())) {
+                throw new IllegalArgumentException("Loader returned an item with another id");
+            }
+            put(item);
+            load.complete(item);
+            return item;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
         }
     }
 
+    /**
+     * The non-blocking form of {@link #get(String)}, for {@link AsyncFSFTBuffer}: a miss
+     * on an id that is being loaded returns the pending result of the load.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @return the object that matches the identifier, or a future that fails with a
+     *         {@link NoSuchElementException} if there is none and none is being loaded
+     */
+    CompletableFuture<B> getAsync(String id) {
+        B item = getIfPresent(id);
+        if (item != null) {
+            return CompletableFuture.completedFuture(item);
+        }
+        CompletableFuture<B> inFlight = loads.get(id);
+        return inFlight != null ? inFlight.copy() : CompletableFuture.failedFuture(
+                new NoSuchElementException("Buffer does not contain item with given id"));
+    }
+
+    /**
+     * The non-blocking form of {@link #get(String, Function)}, for {@link AsyncFSFTBuffer}.
+     * The pending load is kept in {@code loads} like a synchronous one, so a miss of either
+     * form on an id that is being loaded by the other joins the load instead of starting
+     * another; only the synchronous form waits for it. The loaded object is added to the
+     * buffer before the returned future completes.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader starts loading the object with the given id, is not null, must not block
+     *               and must complete with an object whose id is {@code id}
+     * @param executor is given to {@code loader} to run the load on, is not null
+     * @return the object that matches the identifier, from the buffer or from the loader
+     */
+    CompletableFuture<B> getAsync(String id,
+                                  BiFunction<? super String, ? super Executor, ? extends CompletableFuture<? extends B>> loader,
+                                  Executor executor) {
+        B item = getIfPresent(id);
+        if (item != null) {
+            return CompletableFuture.completedFuture(item);
+        }
+        CompletableFuture<B> load = new CompletableFuture<>();
+        CompletableFuture<B> inFlight = loads.putIfAbsent(id, load);
+        if (inFlight != null) {
+            return inFlight.copy();
+        }
+        item = peek(id); // a load may have finished since the miss above
+        if (item != null) {
+            loads.remove(id, load);
+            load.complete(item);
+            return load.copy();
+        }
+        long start = System.nanoTime();
+        CompletableFuture<? extends B> pending;
+        try {
+            pending = loader.apply(id, executor);
+            if (pending == null) {
+                throw new NoSuchElementException("Loader returned no future");
+            }
+        } catch (RuntimeException | Error e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            loads.remove(id, load);
+            load.completeExceptionally(e);
+            return load.copy();
+        }
+        pending.whenComplete((loaded, error) -> {
+            long nanos = System.nanoTime() - start;
+            try {
+                if (error == null && loaded == null) {
+                    error = new NoSuchElementException("Loader returned no item with given id");
+                } else if (error == null && !id.equals(loaded.id())) {
+                    error = new IllegalArgumentException("Loader returned an item with another id");
+                }
+                if (error != null) {
+                    stats.recordLoadFailure(nanos);
+                } else {
+                    stats.recordLoadSuccess(nanos);
+                    put(loaded);
+                }
+            } catch (RuntimeException | Error e) {
+                error = e;
+            } finally {
+                loads.remove(id, load);
+                if (error != null) {
+                    load.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    load.complete(loaded);
+                }
+            }
+        });
+        return load.copy();
+    }
+
+    /**
+     * Gets an item without recording the access.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier, or null if there is none
+     */
+    private B peek(String id) {
+        if (slabs == null) {
+            Node<B> node = idMap.get(id);
+            return node == null || node.isExpired(ticker.read()) ? null : itemOf(node);
+        }
+        lock.lock();
+        try {
+            Node<B> node = idMap.get(id);
+            return node == null || node.isExpired(ticker.read()) ? null : itemOf(node);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Calls a loader, recording the outcome and the duration of the call in the stats.
+     *
+     * @param loader computes the object with the given id
+     * @param id the identifier of the object to load
+     * @return the object returned by the loader
+     */
+    private B load(Function<? super String, ? extends B> loader, String id) {
+        long start = System.nanoTime();
+        B item = null;
+        try {
+            item = loader.apply(id);
+            return item;
+        } finally {
+            if (item != null) {
+                stats.recordLoadSuccess(System.nanoTime() - start);
+            } else {
+                stats.recordLoadFailure(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Waits for a load started by another thread.
+     *
+     * @param load the pending result of the load
+     * @return the loaded object
+     */
+    private B await(CompletableFuture<B> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets an item, recording the access as a hit or a miss.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier, or null if there is none
+     */
+    private B getIfPresent(String id) {
+        long now = ticker.read();
+        Node<B> node = null;
+        B item = null;
+        if (idMap.containsKey(id)) {
+            if (readBuffer != null) {
+                node = getWithoutLock(id, now);
+                item = node == null ? null : itemOf(node);
+            } else {
+                lock.lock();
+                try {
+                    drainCollected();
+                    node = getWithLock(id, now);
+                    item = node == null ? null : itemOf(node);
+                } finally {
+                    unlock();
+                }
+            }
+        }
+        if (item == null && diskTier != null) {
+            item = promote(id, now);
+        }
+        return record(id, node, item, now);
+    }
+
+    /**
+     * Gets the unexpired items with the given ids, as if by calling {@link #get(String)}
+     * on each of them, but taking the lock and reading the clock once for the whole batch.
+     * Ids that are missing or expired are left out of the result.
+     *
+     * @param ids the identifiers of the objects to be retrieved, is not null and does not
+     *            contain null
+     * @return a map from each id that was found to its object
+     */
+    @Override
+    public Map<String, B> getAll(Collection<String> ids) {
+        if (!isBatch(ids)) {
+            throw new IllegalArgumentException("IDs cannot be null");
+        }
+        long now = ticker.read();
+        Map<String, Node<B>> nodes = new LinkedHashMap<>();
+        Map<String, B> items = new HashMap<>();
+        if (readBuffer != null) {
+            for (String id : ids) {
+                Node<B> node = getWithoutLock(id, now);
+                nodes.put(id, node);
+                items.put(id, node == null ? null : itemOf(node));
+            }
+        } else {
+            lock.lock();
+            try {
+                drainCollected();
+                for (String id : ids) {
+                    Node<B> node = getWithLock(id, now);
+                    nodes.put(id, node);
+                    items.put(id, node == null ? null : itemOf(node));
+                }
+            } finally {
+                unlock();
+            }
+        }
+        Map<String, B> hits = new LinkedHashMap<>();
+        nodes.forEach((id, node) -> {
+            B item = items.get(id);
+            if (item == null && diskTier != null) {
+                item = promote(id, now);
+            }
+            item = record(id, node, item, now);
+            if (item != null) {
+                hits.put(id, item);
+            }
+        });
+        return hits;
+    }
+
+    /**
+     * Reports a lookup to the listener and starts a refresh-ahead reload if the item is
+     * close to expiring. Called outside the lock.
+     *
+     * @param id the identifier that was looked up
+     * @param node the node that was found, or null if the object was not in memory
+     * @param item the object that was found, or null on a miss
+     * @param now the time of the lookup in milliseconds
+     * @return the object that was found, or null on a miss
+     */
+    private B record(String id, Node<B> node, B item, long now) {
+        if (item == null) {
+            stats.recordMiss();
+            if (dispatcher != null) {
+                dispatcher.miss(id);
+            }
+            return null;
+        }
+        stats.recordHit();
+        if (dispatcher != null) {
+            dispatcher.hit(item);
+        }
+        if (refreshLoader != null && node != null && isRefreshDue(node, now)) {
+            refreshAhead(id);
+        }
+        return item;
+    }
+
+    /**
+     * @param node a node of the buffer
+     * @param now the current time in milliseconds
+     * @return true if {@code refreshFraction} of the lifetime the item of {@code node} was
+     *         last given has passed
+     */
+    private boolean isRefreshDue(Node<B> node, long now) {
+        long expiryTime = node.expiryTime;
+        long margin = (long) ((expiryTime - node.writeTime) * (1 - refreshFraction));
+        return now >= expiryTime - margin;
+    }
+
+    /**
+     * Moves an item from the disk tier back into the buffer. Called outside the lock. The
+     * copy on disk is only removed once the item has been added, so an item that the
+     * buffer rejects stays on disk. A write of the id that has not reached the disk yet
+     * takes precedence over the disk. The lookup counts as a hit, and not as a put.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param now the current time in milliseconds
+     * @return the object with the given id, or null if it is not on disk either
+     */
+    private B promote(String id, long now) {
+        DiskWrite<B> pending = diskWrites.get(id);
+        B item = pending != null ? pending.item : diskTier.get(id, now);
+        if (item != null) {
+            add(item, now, null, true);
+        }
+        return item;
+    }
+
+    /**
+     * Starts reloading an item in the background, unless a load of the same id is already
+     * in flight. The reloaded item replaces the current one and gets a new timeout; if the
+     * reload fails, the current item is kept until it expires.
+     *
+     * @param id the id of the item to reload
+     */
+    private void refreshAhead(String id) {
+        if (!refreshing.add(id)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    B item = load(refreshLoader, id);
+                    if (item != null && id.equals(item.id())) {
+                        replace(item);
+                    }
+                } catch (RuntimeException e) {
+                    // the current item is kept until it expires
+                } finally {
+                    refreshing.remove(id);
+                }
+            });
+        } catch (RuntimeException e) { // rejected; a later hit tries again
+            refreshing.remove(id);
+        }
+    }
+
+    /**
+     * Replaces the item with the same id as {@code b}, keeping its place in the eviction
+     * order and giving it a new timeout. Nothing happens if the item has been removed, or
+     * if {@code b} is heavier than the whole buffer, in which case the current item is
+     * kept as if the reload had failed.
+     *
+     * @param b the new instance of the item
+     */
+    private void replace(B b) {
+        int weight = weigh(b);
+        if (weight > capacity) {
+            return;
+        }
+        byte[] encoded = encode(b);
+        lock.lock();
+        try {
+            Node<B> old = idMap.get(b.id());
+            if (old == null || weight > capacity) { // the buffer may have shrunk meanwhile
+                return;
+            }
+            long now = ticker.read();
+            Duration lifetime = expiry == null ? delta
+                    : expiry.expireAfterUpdate(b, Duration.ofMillis(old.expiryTime - now));
+            Node<B> node = newNode(b, encoded, weight, now, expiryTime(now, lifetime));
+            release(old);
+            timerWheel.deschedule(old);
+            timerWheel.schedule(node);
+            idMap.put(b.id(), node);
+            totalWeight += weight - old.weight;
+            if (diskTier != null) {
+                writeToDisk(b.id(), null, now); // the copy on disk is now stale
+            }
+            // terminates, since the items fitted before and b alone fits; b itself may go
+            while (totalWeight > capacity) {
+                evict(policy.victim(b.id()), now);
+            }
+            if (dispatcher != null && idMap.get(b.id()) == node) {
+                dispatcher.put(b);
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Looks up an item and records the access with the eviction policy. Must be called
+     * while holding the lock.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param now the current time in milliseconds
+     * @return the node holding the object, or null if there is no unexpired object with
+     *         the given id
+     */
+    private Node<B> getWithLock(String id, long now) {
+        Node<B> node = idMap.get(id);
+        if (node == null || isExpired(node, now)) {
+            return null;
+        }
+        policy.recordAccess(id);
+        if (sketch != null) {
+            sketch.increment(id);
+        }
+        return node;
+    }
+
+    /**
+     * Looks up an item without taking the lock and records the access in the read buffer.
+     * An expired item is left in place for the next refresh to remove.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param now the current time in milliseconds
+     * @return the node holding the object, or null if there is no unexpired object with
+     *         the given id
+     */
+    private Node<B> getWithoutLock(String id, long now) {
+        Node<B> node = idMap.get(id);
+        if (node == null || node.isExpired(now)) {
+            return null;
+        }
+        if (readBuffer.offer(node) && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+                drainCollected();
+            } finally {
+                unlock();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Applies the reads recorded by lock-free gets to the eviction policy. Must be called
+     * while holding the lock.
+     */
+    private void drainReadBuffer() {
+        if (readBuffer == null) {
+            return;
+        }
+        readBuffer.drain(node -> {
+            String id = node.id;
+            if (idMap.get(id) == node) { // the node has not been removed since it was read
+                policy.recordAccess(id);
+            }
+            if (sketch != null) {
+                sketch.increment(id);
+            }
+        });
+    }
+
     /**
      * Checks if the given item is expired, and removes it if it is.
      *
-     * @param item to check the freshness of
+     * @param node holding the item to check the freshness of
+     * @param now the current time in milliseconds
      * @return true if the item is expired and was removed, false otherwise
      */
-    private boolean isExpired(B item) {
-        if (System.currentTimeMillis() > timeoutMap.get(item)) {
-            idMap.remove(item.id());
-            timeoutMap.remove(item);
-            lastUseQueue.remove(item);
+    private boolean isExpired(Node<B> node, long now) {
+        if (node.isExpired(now)) {
+            idMap.remove(node.id);
+            totalWeight -= node.weight;
+            policy.recordRemoval(node.id);
+            timerWheel.deschedule(node);
+            stats.recordExpiry();
+            B item = itemOf(node);
+            if (dispatcher != null && item != null) {
+                dispatcher.expire(item);
+            }
+            release(node);
             return true;
         }
         return false;
@@ -168,62 +1103,962 @@ public class FSFTBuffer<B extends Bufferable> {
      * @param id the identifier of the object to "touch"
      * @return true if successful and false otherwise
      */
+    @Override
     public boolean touch(String id) {
         if (id == null) {
             throw new IllegalArgumentException("ID cannot be null");
         }
-        synchronized (this) {
-            if (!idMap.containsKey(id)) {
-                return false;
+        boolean touched;
+        lock.lock();
+        try {
+            touched = touch(id, ticker.read());
+        } finally {
+            unlock();
+        }
+        if (touched) {
+            stats.recordTouch();
+        }
+        return touched;
+    }
+
+    /**
+     * Remove the object with the provided id from the buffer, and from its disk tier. A
+     * load of the id in flight still adds its result.
+     *
+     * @param id the identifier of the object to remove, is not null
+     * @return true if an unexpired object was removed and false otherwise
+     */
+    @Override
+    public boolean remove(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        lock.lock();
+        try {
+            long now = ticker.read();
+            if (diskTier != null) {
+                writeToDisk(id, null, now);
             }
-            B item = idMap.get(id);
-            if (isExpired(idMap.get(id))) {
+            Node<B> node = idMap.remove(id);
+            if (node == null) {
                 return false;
             }
-            timeoutMap.put(item, System.currentTimeMillis() + delta.toMillis());
-        System.out.println("touched " + id);
+            totalWeight -= node.weight;
+            policy.recordRemoval(id);
+            timerWheel.deschedule(node);
+            release(node);
+            return !node.isExpired(now);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Updates the timeout of a batch of objects, as if by calling {@link #touch(String)}
+     * on each of them, but taking the lock and reading the clock once for the whole batch.
+     *
+     * @param ids the identifiers of the objects to "touch", is not null and does not
+     *            contain null
+     * @return the number of objects whose timeout was updated
+     */
+    @Override
+    public int touchAll(Collection<String> ids) {
+        if (!isBatch(ids)) {
+            throw new IllegalArgumentException("IDs cannot be null");
+        }
+        lock.lock();
+        try {
+            long now = ticker.read();
+            int touched = 0;
+            for (String id : ids) {
+                if (touch(id, now)) {
+                    stats.recordTouch();
+                    touched++;
+                }
+            }
+            return touched;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Updates the timeout of an object. Must be called while holding the lock.
+     *
+     * @param id the identifier of the object to "touch"
+     * @param now the current time in milliseconds
+     * @return true if successful and false otherwise
+     */
+    private boolean touch(String id, long now) {
+        return extend(id, null, now, null);
+    }
+
+    /**
+     * Gives an object a new timeout, because it was touched or put again. Must be called
+     * while holding the lock.
+     *
+     * @param id the identifier of the object
+     * @param update the new instance of the object if it is being put again, or null if
+     *               it is being touched
+     * @param now the current time in milliseconds
+     * @param lifetime how long the object stays in the buffer from now, or null to use the
+     *                 timeout of the buffer
+     * @return true if the object is in the buffer and false otherwise
+     */
+    private boolean extend(String id, B update, long now, Duration lifetime) {
+        Node<B> node = idMap.get(id);
+        if (node == null || isExpired(node, now)) {
+            return false;
+        }
+        B item = itemOf(node);
+        if (item == null) { // reclaimed by the garbage collector, and not yet drained
+            removeCollected(node);
+            return false;
+        }
+        if (lifetime == null && expiry != null) {
+            Duration remaining = Duration.ofMillis(node.expiryTime - now);
+            lifetime = update != null ? expiry.expireAfterUpdate(update, remaining)
+                    : expiry.expireAfterTouch(item, remaining);
+        }
+        node.writeTime = now;
+        node.expiryTime = expiryTime(now, lifetime != null ? lifetime : delta);
+        timerWheel.reschedule(node);
+        if (dispatcher != null) {
+            dispatcher.touch(item);
+        }
+        return true;
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @param lifetime how long an object stays in the buffer
+     * @return the time, in milliseconds, after which the object is expired
+     * @throws IllegalArgumentException if {@code lifetime} is null or negative, which can
+     *         only happen if the {@link Expiry} of the buffer breaks its contract
+     */
+    private static long expiryTime(long now, Duration lifetime) {
+        if (lifetime == null || lifetime.isNegative()) {
+            throw new IllegalArgumentException("Lifetime must be a non-negative duration");
+        }
+        long millis;
+        try {
+            millis = lifetime.toMillis();
+        } catch (ArithmeticException e) { // lasts longer than a long can count milliseconds
+            return Long.MAX_VALUE;
+        }
+        return millis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + millis;
+    }
+
+    /**
+     * Decides whether a new object may replace an object of a full buffer.
+     *
+     * @param candidate the object being added
+     * @param victim the id of the object the eviction policy would evict
+     * @return true if there is no admission filter or if {@code candidate} is estimated to
+     *         be requested more often than the victim, false otherwise
+     */
+    private boolean admit(B candidate, String victim) {
+        if (sketch == null) {
             return true;
         }
+        return sketch.frequency(candidate.id()) > sketch.frequency(victim);
     }
 
     /**
-     * Removes the LRU (least recently used) object from the buffer
+     * Removes the object chosen by the eviction policy from the buffer
+     *
+     * @param victim the id of the object to evict
+     * @param now the current time in milliseconds
      */
-    private void removeLRU() {
-        B removedItem = lastUseQueue.remove();
-        idMap.remove(removedItem.id());
-        timeoutMap.remove(removedItem);
-        System.out.println("removed LRU: " + removedItem.id());
+    private void evict(String victim, long now) {
+        Node<B> node = idMap.remove(victim);
+        totalWeight -= node.weight;
+        policy.recordEviction(victim);
+        timerWheel.deschedule(node);
+        stats.recordEviction();
+        B item = itemOf(node);
+        if (dispatcher != null && item != null) {
+            dispatcher.evict(item);
+        }
+        if (diskTier != null && item != null) {
+            writeToDisk(victim, item, now);
+        }
+        release(node);
     }
 
     /**
-     * Refreshes the buffer, removing all expired entries.
+     * Records a write to the disk tier, replacing any pending write of the same id. Must be
+     * called while holding the lock; the write is scheduled by {@link #unlock()}.
      *
+     * @param id the id of the item
+     * @param item the item to keep on disk, or null to remove the id from the disk tier
+     * @param now the current time in milliseconds
+     */
+    private void writeToDisk(String id, B item, long now) {
+        diskWrites.put(id, new DiskWrite<>(item, now));
+    }
+
+    /**
+     * Releases the lock, then schedules the disk tier writes decided while holding it on
+     * the disk executor, unless a task applying them is already scheduled.
+     */
+    private void unlock() {
+        lock.unlock();
+        if (diskTier != null && !diskWrites.isEmpty() && diskFlushing.compareAndSet(false, true)) {
+            try {
+                diskExecutor.execute(this::flushDiskWrites);
+            } catch (RuntimeException e) { // rejected; the writes wait for the next unlock
+                diskFlushing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Applies the pending disk tier writes. Writes of different ids do not depend on each
+     * other, and only the latest write of each id is kept, so they are applied in any
+     * order. Runs on the disk executor, as the only task doing so.
+     */
+    private void flushDiskWrites() {
+        do {
+            for (Map.Entry<String, DiskWrite<B>> entry : diskWrites.entrySet()) {
+                DiskWrite<B> write = entry.getValue();
+                try {
+                    if (write.item != null) {
+                        diskTier.put(write.item, write.time);
+                    } else {
+                        diskTier.remove(entry.getKey(), write.time);
+                    }
+                } catch (RuntimeException e) {
+                    // the tier is a cache: an item it fails to keep is simply not there
+                }
+                diskWrites.remove(entry.getKey(), write); // unless a newer write replaced it
+            }
+            diskFlushing.set(false);
+            // rechecks after clearing the flag, in case a write was added after the last poll
+        } while (!diskWrites.isEmpty() && diskFlushing.compareAndSet(false, true));
+    }
+
+    /**
+     * Refreshes the buffer, removing all expired entries. Only the timing wheel buckets
+     * that have passed since the last refresh are visited, so the cost is proportional
+     * to the number of expired entries rather than to the size of the buffer.
+     *
+     * @param now the current time in milliseconds
      * @return true if items were removed, false otherwise
      */
-    private boolean refresh() {
-        Iterator<Map.Entry<B, Long>> it = timeoutMap.entrySet().iterator();
-        boolean removed = false;
-        while (it.hasNext()) {
-            Map.Entry<B, Long> entry = it.next();
-            if (System.currentTimeMillis() > entry.getValue()) {
-                it.remove();
-                idMap.remove(entry.getKey().id());
-                lastUseQueue.remove(entry.getKey());
-                removed = true;
-                System.out.println("removed expired: " + entry.getKey().id());
+    private boolean refresh(long now) {
+        return timerWheel.advance(now, this::removeExpired) > 0;
+    }
+
+    /**
+     * Removes expired entries for the background sweeper, in steps of at most
+     * {@link #SWEEP_STEP} milliseconds of the timing wheel, releasing the lock between
+     * steps. Gives up without waiting if another thread holds the lock, since that thread
+     * removes expired entries itself.
+     *
+     * @param deadline the {@link System#nanoTime()} after which no new step is started
+     * @return true if the buffer has caught up with the current time, false otherwise
+     */
+    boolean sweep(long deadline) {
+        while (true) {
+            if (!lock.tryLock()) {
+                return false;
+            }
+            try {
+                long now = ticker.read();
+                drainReadBuffer();
+                drainCollected();
+                long target = idMap.isEmpty() ? now : Math.min(now, timerWheel.time() + SWEEP_STEP);
+                refresh(target);
+                if (target == now) {
+                    return true;
+                }
+            } finally {
+                unlock();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes an expired node, which the timing wheel has already descheduled, from the buffer.
+     *
+     * @param node the expired node
+     */
+    private void removeExpired(Node<B> node) {
+        idMap.remove(node.id);
+        totalWeight -= node.weight;
+        policy.recordRemoval(node.id);
+        stats.recordExpiry();
+        B item = itemOf(node);
+        if (dispatcher != null && item != null) {
+            dispatcher.expire(item);
+        }
+        release(node);
+    }
+
+    /**
+     * @return a snapshot of the counters of the buffer; counting is always on, and each
+     *         event costs one uncontended increment
+     */
+    @Override
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * @return the capacity of the buffer, as a total weight
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the timeout given to objects that have no lifetime of their own
+     */
+    public Duration timeout() {
+        return delta;
+    }
+
+    /**
+     * Change the capacity of the buffer. If the objects in the buffer weigh more than the
+     * new capacity, the expired objects are removed, and then the victims of the eviction
+     * policy until the rest fits.
+     *
+     * @param capacity the new capacity, is positive
+     */
+    public void resize(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            policy.setCapacity(capacity);
+            if (sketch != null) {
+                sketch.ensureCapacity(capacity);
+            }
+            if (totalWeight > capacity) {
+                long now = ticker.read();
+                maintain(now);
+                while (totalWeight > capacity) {
+                    evict(policy.victim(null), now);
+                }
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Change the timeout of the buffer. Objects already in the buffer keep their expiry
+     * times until they are put again or touched; objects added from now on get the new
+     * timeout, as do objects reloaded by refresh-ahead.
+     *
+     * @param delta the new timeout, is not null and is positive
+     */
+    public void setTimeout(Duration delta) {
+        if (delta == null || delta.isNegative() || delta.isZero()) {
+            throw new IllegalArgumentException("Timeout must be a positive duration");
+        }
+        lock.lock();
+        try {
+            this.delta = delta;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Saves the items of the buffer, with their remaining lifetimes and in eviction order,
+     * to a file from which {@link #restore(Path, BufferableCodec)} can rebuild them. The
+     * buffer is only locked while the items are collected; they are encoded and written
+     * afterwards.
+     *
+     * @param path the file to write, is not null; it is replaced if it exists
+     * @param codec converts the items to bytes, is not null
+     * @throws IOException if the file cannot be written
+     */
+    public void snapshot(Path path, BufferableCodec<B> codec) throws IOException {
+        if (path == null || codec == null) {
+            throw new IllegalArgumentException("Path and codec cannot be null");
+        }
+        List<SnapshotFile.Entry<B>> entries = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = ticker.read();
+            maintain(now);
+            for (String id : policy.evictionOrder()) {
+                Node<B> node = idMap.get(id);
+                B item = itemOf(node);
+                if (item != null) {
+                    entries.add(new SnapshotFile.Entry<>(item, node.expiryTime - now));
+                }
+            }
+        } finally {
+            unlock();
+        }
+        SnapshotFile.write(path, entries, codec);
+    }
+
+    /**
+     * Adds the items saved by {@link #snapshot(Path, BufferableCodec)} to the buffer, in
+     * the saved eviction order. Each item keeps the lifetime it had left when the snapshot
+     * was taken, minus the time that has passed since then; items that have expired in the
+     * meantime are skipped. Items that are already in the buffer are kept as they are, and
+     * otherwise the items are added as if by {@code put}, evicting items if the buffer
+     * fills up. The items are added in batches, so the buffer serves other threads while a
+     * large snapshot is restored.
+     *
+     * @param path the snapshot file, is not null
+     * @param codec converts the items from bytes, is not null
+     * @return the number of items added
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     */
+    public int restore(Path path, BufferableCodec<B> codec) throws IOException {
+        if (path == null || codec == null) {
+            throw new IllegalArgumentException("Path and codec cannot be null");
+        }
+        int restored = 0;
+        try (SnapshotFile.Reader<B> reader = new SnapshotFile.Reader<>(path, codec)) {
+            // the snapshot may come from another process, so its age is measured on the wall clock
+            long age = Math.max(0, System.currentTimeMillis() - reader.snapshotTime());
+            List<SnapshotFile.Entry<B>> batch;
+            while (!(batch = reader.next(RESTORE_BATCH)).isEmpty()) {
+                restored += restore(batch, age);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Runs {@link #restore(Path, BufferableCodec)} in the background, so that the buffer
+     * can serve requests while it is warmed up.
+     *
+     * @param path the snapshot file, is not null
+     * @param codec converts the items from bytes, is not null
+     * @param executor runs the restore, is not null
+     * @return the number of items added, or an exception wrapping the {@link IOException}
+     *         if the file cannot be read
+     */
+    public CompletableFuture<Integer> restoreAsync(Path path, BufferableCodec<B> codec, Executor executor) {
+        if (path == null || codec == null || executor == null) {
+            throw new IllegalArgumentException("Path, codec and executor cannot be null");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return restore(path, codec);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }, executor);
+    }
+
+    /**
+     * Adds a batch of restored items, taking the lock once.
+     *
+     * @param batch the items and their remaining lifetimes at the time of the snapshot
+     * @param age the number of milliseconds since the snapshot was taken
+     * @return the number of items added
+     */
+    private int restore(List<SnapshotFile.Entry<B>> batch, long age) {
+        int[] weights = new int[batch.size()];
+        byte[][] encoded = new byte[batch.size()][];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weigh(batch.get(i).item());
+            encoded[i] = encode(batch.get(i).item());
+        }
+        lock.lock();
+        try {
+            long now = ticker.read();
+            maintain(now);
+            int added = 0;
+            for (int i = 0; i < weights.length; i++) {
+                B b = batch.get(i).item();
+                long lifetime = batch.get(i).remaining() - age;
+                if (lifetime >= 0 && !idMap.containsKey(b.id())
+                        && insert(b, encoded[i], weights[i], now, Duration.ofMillis(lifetime), false)) {
+                    added++;
+                }
+            }
+            return added;
+        } finally {
+            unlock();
         }
-        return removed;
     }
 
     /**
-     * @return a set of a all the items currently in the buffer
+     * @return a snapshot of all the items currently in the buffer
      */
+    @Override
     public Set<B> currentItems() {
-        synchronized (this) {
-            refresh();
+        lock.lock();
+        try {
+            drainCollected();
+            refresh(ticker.read());
+            Set<B> items = new HashSet<>();
+            for (Node<B> node : idMap.values()) {
+                B item = itemOf(node);
+                if (item != null) {
+                    items.add(item);
+                } else {
+                    removeCollected(node);
+                }
+            }
+            return Collections.unmodifiableSet(items);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over the unexpired items of the buffer. It
+     * traverses the buffer's concurrent id map without taking the lock and never throws
+     * {@link java.util.ConcurrentModificationException}: it sees every item that stays in
+     * the buffer for the whole traversal, and may or may not see items added or removed
+     * meanwhile. The clock is read once, when the spliterator is created: items that had
+     * expired by then are skipped, but are left in the buffer, and items that expire during
+     * the traversal may still be returned. A traversal does not count as hits or
+     * touches, and does not change the eviction order. The spliterator splits as well as a
+     * {@link ConcurrentHashMap} does, so it suits parallel streams over large buffers.
+     *
+     * <p>A buffer that stores its items off the heap takes the lock briefly for each item,
+     * to decode it while its block cannot be freed.</p>
+     *
+     * @return a spliterator over the items of the buffer
+     */
+    public Spliterator<B> spliterator() {
+        long now = ticker.read();
+        return new BufferSpliterator<>(idMap.values().spliterator(),
+                node -> node.isExpired(now) ? null : scanItemOf(node));
+    }
+
+    /**
+     * @return a sequential stream over {@link #spliterator()}; call {@code parallel()} on it
+     *         to scan the buffer in parallel
+     */
+    @Override
+    public Stream<B> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Gets the item of a node reached by a scan, outside the lock.
+     *
+     * @param node a node that was in the buffer when the scan reached it
+     * @return the item held by {@code node}, or null if it has been removed or reclaimed
+     */
+    private B scanItemOf(Node<B> node) {
+        if (slabs == null) {
+            return itemOf(node);
+        }
+        lock.lock();
+        try {
+            return idMap.get(node.id) == node ? itemOf(node) : null;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * A write to the disk tier decided under the lock and not applied yet. Writes are
+     * compared by identity, so that a write replaced while it is being applied stays pending.
+     *
+     * @param <B> the type of the item
+     */
+    private static final class DiskWrite<B> {
+        /* the item to keep on disk, or null to remove the id */
+        final B item;
+        final long time;
+
+        DiskWrite(B item, long time) {
+            this.item = item;
+            this.time = time;
+        }
+    }
+
+    /**
+     * A builder for buffers with options beyond capacity and timeout.
+     *
+     * <p>Example: {@code new FSFTBuffer.Builder<WikiPage>().withCapacity(1024).withLockFreeReads().build()}</p>
+     *
+     * @param <B> the type of objects in the buffer
+     */
+    public static class Builder<B extends Bufferable> {
+        private int capacity = DEFAULT_CAPACITY;
+        private Duration delta = DEFAULT_TIMEOUT;
+        private boolean lockFreeReads = false;
+        private BufferListener<? super B> listener = null;
+        private Executor listenerExecutor = ForkJoinPool.commonPool();
+        private boolean tinyLfuAdmission = false;
+        private Supplier<? extends EvictionPolicy> policyFactory = LruPolicy::new;
+        private Weigher<? super B> weigher = item -> 1;
+        private Expiry<? super B> expiry = null;
+        private Function<? super String, ? extends B> refreshLoader = null;
+        private Executor refreshExecutor = ForkJoinPool.commonPool();
+        private double refreshFraction = 1;
+        private BufferableCodec<B> codec = null;
+        private Path diskDirectory = null;
+        private BufferableCodec<B> diskCodec = null;
+        private long diskBytes = 0;
+        private Duration diskTimeout = null;
+        private Executor diskExecutor = ForkJoinPool.commonPool();
+        private Ticker ticker = Ticker.system();
+        private Duration sweepPeriod = null;
+        private boolean softValues = false;
+        private int tuningMaxCapacity = 0;
+        private Duration tuningMaxTimeout = null;
+        private Duration tuningPeriod = null;
+
+        /**
+         * @param capacity the number of objects the buffer can hold, is positive
+         * @return this builder
+         */
+        public Builder<B> withCapacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param delta the duration an object should be in the buffer before it times out,
+         *              is not null and is positive
+         * @return this builder
+         */
+        public Builder<B> withTimeout(Duration delta) {
+            if (delta == null || delta.isNegative() || delta.isZero()) {
+                throw new IllegalArgumentException("Timeout must be a positive duration");
+            }
+            this.delta = delta;
+            return this;
+        }
+
+        /**
+         * Serve {@code get} hits without taking the buffer's lock. Accesses are recorded
+         * in a lossy striped read buffer and replayed into the eviction policy in batches.
+         *
+         * @return this builder
+         */
+        public Builder<B> withLockFreeReads() {
+            this.lockFreeReads = true;
+            return this;
+        }
+
+        /**
+         * Deliver the events of the buffer to a listener, in batches on the common
+         * fork-join pool.
+         *
+         * @param listener the listener to notify, is not null
+         * @return this builder
+         */
+        public Builder<B> withListener(BufferListener<? super B> listener) {
+            return withListener(listener, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Deliver the events of the buffer to a listener, in batches on the given executor.
+         *
+         * @param listener the listener to notify, is not null
+         * @param executor the executor that runs the deliveries, is not null
+         * @return this builder
+         */
+        public Builder<B> withListener(BufferListener<? super B> listener, Executor executor) {
+            if (listener == null || executor == null) {
+                throw new IllegalArgumentException("Listener and executor cannot be null");
+            }
+            this.listener = listener;
+            this.listenerExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Only let a new object replace the victim of a full buffer if it is estimated,
+         * by a count-min frequency sketch with periodic aging, to be requested more often.
+         * Requests are counted on {@code get} hits and on {@code put}.
+         *
+         * @return this builder
+         */
+        public Builder<B> withTinyLfuAdmission() {
+            this.tinyLfuAdmission = true;
+            return this;
+        }
+
+        /**
+         * Choose the items to evict with a policy other than LRU, for example
+         * {@code withEvictionPolicy(ArcPolicy::new)}. The timeout semantics do not change:
+         * expired items are removed before the policy is asked for a victim.
+         *
+         * @param policyFactory creates a new policy for each buffer built, is not null
+         * @return this builder
+         */
+        public Builder<B> withEvictionPolicy(Supplier<? extends EvictionPolicy> policyFactory) {
+            if (policyFactory == null) {
+                throw new IllegalArgumentException("Policy factory cannot be null");
+            }
+            this.policyFactory = policyFactory;
+            return this;
+        }
+
+        /**
+         * Make the capacity of the buffer a maximum total weight instead of a number of
+         * objects, for example {@code withWeigher(page -> page.getText().length())} with a
+         * capacity of 64 MB worth of characters. Policies that size internal segments by
+         * count (segmented LRU, ARC) still treat the capacity as a number of objects.
+         *
+         * @param weigher computes the weight of each object, is not null
+         * @return this builder
+         */
+        public Builder<B> withWeigher(Weigher<? super B> weigher) {
+            if (weigher == null) {
+                throw new IllegalArgumentException("Weigher cannot be null");
+            }
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Compute the timeout of each object with an expiry policy instead of using the same
+         * timeout for every object. The policy is asked when an object is added, put again,
+         * touched, or reloaded by refresh-ahead, and refresh-ahead reloads an object once
+         * its fraction of the lifetime the policy gave it has passed.
+         *
+         * @param expiry computes the lifetime of each object, is not null
+         * @return this builder
+         */
+        public Builder<B> withExpiry(Expiry<? super B> expiry) {
+            if (expiry == null) {
+                throw new IllegalArgumentException("Expiry cannot be null");
+            }
+            this.expiry = expiry;
+            return this;
+        }
+
+        /**
+         * Reload items in the background once {@code fraction} of their lifetime has passed,
+         * on the common fork-join pool. See {@link #withRefreshAhead(double, Function, Executor)}.
+         *
+         * @param fraction the fraction of the lifetime after which an item is reloaded
+         * @param loader computes a fresh instance of the item with the given id
+         * @return this builder
+         */
+        public Builder<B> withRefreshAhead(double fraction, Function<? super String, ? extends B> loader) {
+            return withRefreshAhead(fraction, loader, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Reload items in the background once {@code fraction} of their lifetime has passed.
+         * The lifetime of an item is the one it was last given, when it was added, put again,
+         * or touched: the timeout of the buffer, or the lifetime given to
+         * {@link FSFTBuffer#put(Bufferable, Duration)} or computed by an {@link Expiry}. A
+         * {@code get} of such an item returns it immediately and starts the reload; the
+         * reloaded item replaces it with a fresh timeout. An item that is not requested in
+         * that window simply expires.
+         *
+         * @param fraction the fraction of the lifetime after which an item is reloaded, is
+         *                 strictly between 0 and 1
+         * @param loader computes a fresh instance of the item with the given id, is not null
+         * @param executor runs the reloads, is not null
+         * @return this builder
+         */
+        public Builder<B> withRefreshAhead(double fraction, Function<? super String, ? extends B> loader,
+                                           Executor executor) {
+            if (!(fraction > 0 && fraction < 1)) {
+                throw new IllegalArgumentException("Fraction must be between 0 and 1");
+            }
+            if (loader == null || executor == null) {
+                throw new IllegalArgumentException("Loader and executor cannot be null");
+            }
+            this.refreshFraction = fraction;
+            this.refreshLoader = loader;
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Store the objects of the buffer outside the Java heap, encoded with {@code codec}
+         * into slabs of direct memory. Only the ids and the bookkeeping of the buffer stay on
+         * the heap, so a large buffer does not lengthen garbage collection pauses. Every
+         * {@code get} decodes a new copy of the object, and every {@code put} encodes it.
+         * Cannot be combined with {@link #withLockFreeReads()}, since an object is decoded
+         * while holding the buffer's lock.
+         *
+         * @param codec converts the objects to and from bytes, is not null
+         * @return this builder
+         */
+        public Builder<B> withOffHeapValues(BufferableCodec<B> codec) {
+            if (codec == null) {
+                throw new IllegalArgumentException("Codec cannot be null");
+            }
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Keep the objects evicted from the buffer in a second tier of memory-mapped segment
+         * files, instead of dropping them. A {@code get} that misses in memory looks for the
+         * object on disk, and moves it back into memory if it is found. Objects that expire
+         * in memory are not kept on disk.
+         *
+         * <p>The tier has its own timeout, counted from when an object is evicted to disk,
+         * and its own size cap: the files are split into segments of {@code maxBytes / 8},
+         * or of 64 MiB if that is smaller, so a cap above 512 MiB gives more than 8
+         * segments. When the cap is reached the oldest segment is dropped. Segments that are
+         * mostly made of removed objects are compacted. Objects too large for a segment are
+         * not kept. The writes to the tier run on the common fork-join pool.</p>
+         *
+         * @param directory the directory for the segment files, is not null; segment files
+         *                  left there by an earlier buffer are deleted
+         * @param codec converts the objects to and from bytes, is not null
+         * @param maxBytes the maximum total size of the segment files, is at least 64 KiB
+         * @param timeout how long an object stays on disk, is not null and is positive
+         * @return this builder
+         */
+        public Builder<B> withDiskTier(Path directory, BufferableCodec<B> codec, long maxBytes, Duration timeout) {
+            return withDiskTier(directory, codec, maxBytes, timeout, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Keep the objects evicted from the buffer in a second tier on disk, as described by
+         * {@link #withDiskTier(Path, BufferableCodec, long, Duration)}, writing to it on
+         * {@code executor}. Writes are decided under the buffer's lock but applied by one
+         * task at a time on the executor, so that no {@code put} or {@code get} waits for
+         * the disk or for a segment to be compacted.
+         *
+         * @param directory the directory for the segment files, is not null; segment files
+         *                  left there by an earlier buffer are deleted
+         * @param codec converts the objects to and from bytes, is not null
+         * @param maxBytes the maximum total size of the segment files, is at least 64 KiB
+         * @param timeout how long an object stays on disk, is not null and is positive
+         * @param executor runs the writes to the tier, is not null
+         * @return this builder
+         */
+        public Builder<B> withDiskTier(Path directory, BufferableCodec<B> codec, long maxBytes, Duration timeout,
+                                       Executor executor) {
+            if (directory == null || codec == null || executor == null) {
+                throw new IllegalArgumentException("Directory, codec and executor cannot be null");
+            }
+            if (maxBytes < 1 << 16) {
+                throw new IllegalArgumentException("Disk tier must hold at least 64 KiB");
+            }
+            if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("Timeout must be a positive duration");
+            }
+            this.diskDirectory = directory;
+            this.diskCodec = codec;
+            this.diskBytes = maxBytes;
+            this.diskTimeout = timeout;
+            this.diskExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Read the current time from {@code ticker} instead of {@link Ticker#system()}, for
+         * example from the {@link Ticker#coarse() coarse ticker} when the buffer is read often
+         * enough that reading the system clock shows up in profiles, or from a ticker
+         * advanced by hand in tests.
+         *
+         * @param ticker the source of the current time, is not null
+         * @return this builder
+         */
+        public Builder<B> withTicker(Ticker ticker) {
+            if (ticker == null) {
+                throw new IllegalArgumentException("Ticker cannot be null");
+            }
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * Remove expired objects in the background every {@code period}, instead of only
+         * when the buffer is full or {@code currentItems} is called, so that a buffer that
+         * goes quiet releases its expired objects. All buffers are swept by one shared
+         * daemon thread, in slices of about a millisecond per buffer, and a sweep skips a
+         * buffer that is in use. The sweeps stop once the buffer is garbage collected.
+         *
+         * @param period the time between two sweeps, is not null and is positive
+         * @return this builder
+         */
+        public Builder<B> withExpirySweeper(Duration period) {
+            if (period == null || period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Period must be a positive duration");
+            }
+            this.sweepPeriod = period;
+            return this;
+        }
+
+        /**
+         * Hold the objects of the buffer through {@link java.lang.ref.SoftReference}s, so
+         * that the garbage collector can reclaim them when the heap runs low instead of
+         * throwing an {@link OutOfMemoryError}. The buffer can then be given a large capacity
+         * and grows as far as the heap allows. A reclaimed object is removed from the
+         * buffer as if it had been evicted, but without a listener event, since the object
+         * is gone. Cannot be combined with {@link #withOffHeapValues(BufferableCodec)}.
+         *
+         * @return this builder
+         */
+        public Builder<B> withSoftValues() {
+            this.softValues = true;
+            return this;
+        }
+
+        /**
+         * Tune the capacity and the timeout of the buffer while it runs, starting from the
+         * capacity and timeout given to this builder. Every {@code period}, if the buffer
+         * served enough lookups, the tuner compares its hit rate against the capacity and
+         * timeout it used, moves one of them by 10%, and undoes the move if it did not pay
+         * off. The buffer settles where growing it further gains less hit rate than it
+         * costs; expensive loads, as timed by {@code get(id, loader)}, make hits worth more
+         * and let it grow further. Settings stay between 1/64 of their maximum and their
+         * maximum. Tuning runs on the thread shared with {@link #withExpirySweeper(Duration)}.
+         *
+         * @param maxCapacity the largest capacity the buffer may be given, which bounds its
+         *                    memory use with a weigher that counts bytes; is positive and at
+         *                    least the capacity of the buffer
+         * @param maxTimeout the longest timeout the buffer may be given, is not null and is
+         *                   at least the timeout of the buffer
+         * @param period the time between two tuning steps, is not null and is positive
+         * @return this builder
+         */
+        public Builder<B> withAutoTuning(int maxCapacity, Duration maxTimeout, Duration period) {
+            if (maxCapacity <= 0 || maxTimeout == null || maxTimeout.toMillis() < 1) {
+                throw new IllegalArgumentException("Maximum capacity and timeout must be positive");
+            }
+            if (period == null || period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Period must be a positive duration");
+            }
+            this.tuningMaxCapacity = maxCapacity;
+            this.tuningMaxTimeout = maxTimeout;
+            this.tuningPeriod = period;
+            return this;
+        }
+
+        /**
+         * @return a new buffer with the options of this builder
+         */
+        public FSFTBuffer<B> build() {
+            if (lockFreeReads && codec != null) {
+                throw new IllegalArgumentException("Off-heap values cannot be combined with lock-free reads");
+            }
+            if (softValues && codec != null) {
+                throw new IllegalArgumentException("Soft values cannot be combined with off-heap values");
+            }
+            if (tuningPeriod != null && (capacity > tuningMaxCapacity || delta.compareTo(tuningMaxTimeout) > 0)) {
+                throw new IllegalArgumentException("Auto-tuning must start within its maximum capacity and timeout");
+            }
+            FSFTBuffer<B> buffer = new FSFTBuffer<>(this);
+            if (sweepPeriod != null) {
+                MaintenanceScheduler.schedule(buffer, sweepPeriod,
+                        target -> target.sweep(System.nanoTime() + SWEEP_SLICE_NANOS));
+            }
+            if (tuningPeriod != null) {
+                AutoTuner tuner = new AutoTuner(tuningMaxCapacity, tuningMaxTimeout);
+                MaintenanceScheduler.schedule(buffer, tuningPeriod, tuner::tune);
+            }
+            return buffer;
         }
-        return Collections.unmodifiableSet(timeoutMap.keySet());
     }
 }
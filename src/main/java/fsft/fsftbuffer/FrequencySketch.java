@@ -0,0 +1,136 @@
+package fsft.fsftbuffer;
+
+/**
+ * A count-min sketch that estimates how often each id has been requested recently, using
+ * four 4-bit counters per id packed into a {@code long[]}. The sketch takes 8 bytes per
+ * expected entry regardless of how many distinct ids it sees.
+ *
+ * <p>Counters saturate at 15. To keep the estimates about recent history, every counter is
+ * halved once the number of recorded requests reaches ten times the capacity of the buffer
+ * (the "sample size"), so popularity that is not renewed decays.</p>
+ *
+ * <p>A {@code FrequencySketch} is not thread-safe; the owning buffer must hold its lock.</p>
+ */
+class FrequencySketch {
+
+    // Abstraction Function:
+    //      AF(r) = a function from ids to estimated recent request counts, where the
+    //      estimate for an id is the minimum of its four counters in r.table
+
+    // Rep Invariant is
+    //      table.length is a power of two
+    //      0 <= size < sampleSize
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * Create a sketch sized for a buffer of the given capacity.
+     *
+     * @param capacity the capacity of the buffer, is positive
+     */
+    FrequencySketch(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Grow the sketch, if needed, so that it is sized for a buffer of the given capacity.
+     * Growing the sketch forgets all recorded requests.
+     *
+     * @param capacity the capacity of the buffer, is positive
+     */
+    void ensureCapacity(int capacity) {
+        int length = Integer.highestOneBit(Math.max(8, Math.min(capacity, 1 << 30)) * 2 - 1);
+        if (table != null && table.length >= length) {
+            return;
+        }
+        table = new long[length];
+        sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * @param id an id
+     * @return the estimated number of recent requests for {@code id}, between 0 and 15
+     */
+    int frequency(String id) {
+        int hash = spread(id.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record a request for an id, halving all counters if the sample size is reached.
+     *
+     * @param id the requested id
+     */
+    void increment(String id) {
+        int hash = spread(id.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increment the j-th 4-bit counter of table[i] unless it is saturated.
+     *
+     * @return true if the counter was incremented
+     */
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halve every counter. Odd counters lose their remainder, which is subtracted from
+     * {@code size} so that it stays an estimate of the recorded requests.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    /**
+     * @return the index in table of the i-th counter of the id with the given hash
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & (table.length - 1);
+    }
+
+    /**
+     * Mix the bits of a hash code, since String.hashCode spreads similar ids poorly.
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
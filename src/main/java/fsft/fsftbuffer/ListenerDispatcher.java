@@ -0,0 +1,106 @@
+package fsft.fsftbuffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queues the events of a buffer and delivers them to a {@link BufferListener} in batches on
+ * an executor. At most one batch runs at a time, so events are delivered in order even
+ * when the executor is a thread pool.
+ *
+ * @param <B> the type of objects in the buffer
+ */
+class ListenerDispatcher<B extends Bufferable> {
+
+    // Abstraction Function:
+    //      AF(r) = the events in r.events, oldest first, waiting to be delivered to r.listener
+
+    // Rep Invariant is
+    //      listener, executor, and events are not null
+    //      at most one drain task is running or scheduled while scheduled is true
+
+    private enum Type { PUT, HIT, MISS, TOUCH, EVICT, EXPIRE }
+
+    private record Event<B>(Type type, B item, String id) {
+    }
+
+    private final BufferListener<? super B> listener;
+    private final Executor executor;
+    private final Queue<Event<B>> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * @param listener the listener to deliver events to, is not null
+     * @param executor the executor that runs the deliveries, is not null
+     */
+    ListenerDispatcher(BufferListener<? super B> listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    void put(B item) {
+        enqueue(new Event<>(Type.PUT, item, null));
+    }
+
+    void hit(B item) {
+        enqueue(new Event<>(Type.HIT, item, null));
+    }
+
+    void miss(String id) {
+        enqueue(new Event<>(Type.MISS, null, id));
+    }
+
+    void touch(B item) {
+        enqueue(new Event<>(Type.TOUCH, item, null));
+    }
+
+    void evict(B item) {
+        enqueue(new Event<>(Type.EVICT, item, null));
+    }
+
+    void expire(B item) {
+        enqueue(new Event<>(Type.EXPIRE, item, null));
+    }
+
+    /**
+     * Add an event to the queue. Delivery is only scheduled by the caller that finds no
+     * batch pending, so a burst of events costs a single executor task.
+     */
+    private void enqueue(Event<B> event) {
+        events.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Deliver every queued event, then allow the next batch to be scheduled.
+     */
+    private void drain() {
+        do {
+            Event<B> event;
+            while ((event = events.poll()) != null) {
+                deliver(event);
+            }
+            scheduled.set(false);
+            // an event queued after the last poll but before the reset must not be stranded
+        } while (!events.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private void deliver(Event<B> event) {
+        try {
+            switch (event.type()) {
+                case PUT -> listener.onPut(event.item());
+                case HIT -> listener.onHit(event.item());
+                case MISS -> listener.onMiss(event.id());
+                case TOUCH -> listener.onTouch(event.item());
+                case EVICT -> listener.onEvict(event.item());
+                case EXPIRE -> listener.onExpire(event.item());
+            }
+        } catch (RuntimeException e) {
+            // a faulty listener must not stop the delivery of later events
+        }
+    }
+}
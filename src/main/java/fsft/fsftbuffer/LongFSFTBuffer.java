@@ -0,0 +1,333 @@
+package fsft.fsftbuffer;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A finite-space, finite-time buffer keyed by {@code long} ids, such as MediaWiki page ids,
+ * with the same put, get, and touch semantics as an {@link FSFTBuffer} that uses LRU
+ * eviction and a single timeout. Values need not be {@link Bufferable}, since the id is
+ * given with each value.
+ *
+ * <p>The buffer is made of primitive arrays allocated once, when it is created. Entries
+ * live in parallel arrays of ids, expiry times, values, and the links of two doubly-linked
+ * lists: one in recency order for eviction, and one in expiry order. Since every entry has
+ * the same timeout, an entry that is added or touched always expires last, so the expired
+ * entries are found at the head of the expiry list without a timing wheel. Ids are looked up
+ * in an open-addressing table of entry indexes with linear probing, at most half full, and
+ * removals shift the following entries back instead of leaving tombstones. An entry takes
+ * about 40 bytes of arrays and its share of the table, and no operation boxes an id or a
+ * time or allocates.</p>
+ *
+ * <p>A {@code LongFSFTBuffer} is thread-safe; every operation takes a single lock.</p>
+ *
+ * @param <V> the type of values in the buffer
+ */
+public class LongFSFTBuffer<V> {
+
+    // Abstraction Function:
+    //      AF(r) = a buffer mapping ids[e] to values[e] for each entry e on the recency list,
+    //      where values[e] is expired once r.ticker reads past expiryTimes[e], e is the
+    //      least recently used entry if it comes first on the recency list, and r.delta is
+    //      the timeout of every value
+
+    // Rep Invariant is
+    //      0 < capacity <= MAX_CAPACITY and delta >= 0
+    //      table.length is a power of two, at least 2 * capacity, and mask == table.length - 1
+    //      the entries on the recency list are exactly the entries on the expiry list,
+    //      there are size of them, and each has a non-null value
+    //      the entries on the free list have a null value; every entry in 0..capacity-1 is
+    //      on either the recency list or the free list
+    //      table holds 1 + e for exactly the entries e on the recency list, each in the first
+    //      slot at or after the home slot of ids[e] that is not separated from it by an empty slot
+    //      the expiry list is in non-decreasing order of expiryTimes
+    //      the sentinel of both lists is the entry at index capacity
+
+    /* the largest capacity whose table fits in an array */
+    public static final int MAX_CAPACITY = 1 << 29;
+    /* ends the free list */
+    private static final int NONE = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Ticker ticker;
+    private final int capacity;
+    private final long delta;
+
+    private final int[] table;
+    private final int mask;
+    private final int shift;
+
+    private final long[] ids;
+    private final long[] expiryTimes;
+    private final Object[] values;
+    private final int[] prevByRecency;
+    private final int[] nextByRecency;
+    private final int[] prevByExpiry;
+    private final int[] nextByExpiry;
+    /* the first free entry, whose successors are chained through nextByRecency */
+    private int free;
+    private int size = 0;
+
+    /**
+     * Create a buffer with a fixed capacity and a timeout value, that reads the time from
+     * {@link Ticker#system()}.
+     *
+     * @param capacity the number of values the buffer can hold, is positive and at most
+     *                 {@link #MAX_CAPACITY}
+     * @param delta the duration a value stays in the buffer after it is added or touched,
+     *              is not null and is not negative
+     */
+    public LongFSFTBuffer(int capacity, Duration delta) {
+        this(capacity, delta, Ticker.system());
+    }
+
+    /**
+     * Create a buffer with a fixed capacity and a timeout value.
+     *
+     * @param capacity the number of values the buffer can hold, is positive and at most
+     *                 {@link #MAX_CAPACITY}
+     * @param delta the duration a value stays in the buffer after it is added or touched,
+     *              is not null and is not negative
+     * @param ticker the source of the current time, is not null
+     */
+    public LongFSFTBuffer(int capacity, Duration delta, Ticker ticker) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        if (delta == null || delta.isNegative()) {
+            throw new IllegalArgumentException("Timeout must be a non-negative duration");
+        }
+        if (ticker == null) {
+            throw new IllegalArgumentException("Ticker cannot be null");
+        }
+        this.capacity = capacity;
+        long millis;
+        try {
+            millis = delta.toMillis();
+        } catch (ArithmeticException e) { // lasts longer than a long can count milliseconds
+            millis = Long.MAX_VALUE;
+        }
+        this.delta = millis;
+        this.ticker = ticker;
+        int tableSize = Integer.highestOneBit(2 * capacity - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(tableSize);
+        this.ids = new long[capacity];
+        this.expiryTimes = new long[capacity];
+        this.values = new Object[capacity];
+        this.prevByRecency = new int[capacity + 1];
+        this.nextByRecency = new int[capacity + 1];
+        this.prevByExpiry = new int[capacity + 1];
+        this.nextByExpiry = new int[capacity + 1];
+        prevByRecency[capacity] = nextByRecency[capacity] = capacity;
+        prevByExpiry[capacity] = nextByExpiry[capacity] = capacity;
+        for (int e = 0; e < capacity; e++) {
+            nextByRecency[e] = e + 1 < capacity ? e + 1 : NONE;
+        }
+        free = 0;
+    }
+
+    /**
+     * Add a value to the buffer. If the buffer is full, the expired values are removed,
+     * and then the least recently accessed value if the buffer is still full. If a value
+     * with the same id is in the buffer, it is kept and its timeout is refreshed instead.
+     *
+     * @param id the id of the value
+     * @param value the value to add, is not null
+     * @return true if {@code value} was added and false otherwise
+     */
+    public boolean put(long id, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        lock.lock();
+        try {
+            long now = ticker.read();
+            int e = find(id);
+            if (e != NONE && !removeIfExpired(e, now)) {
+                refresh(e, now);
+                return false;
+            }
+            if (size == capacity) {
+                removeExpired(now);
+                if (size == capacity) {
+                    remove(nextByRecency[capacity]);
+                }
+            }
+            e = free;
+            free = nextByRecency[e];
+            ids[e] = id;
+            values[e] = value;
+            expiryTimes[e] = expiryTime(now);
+            link(prevByRecency, nextByRecency, e);
+            link(prevByExpiry, nextByExpiry, e);
+            int slot = home(id);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = e + 1;
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve a value from the buffer, which makes it the most recently accessed value.
+     *
+     * @param id the id of the value
+     * @return the value with the given id
+     * @throws NoSuchElementException if the buffer has no unexpired value with that id
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long id) {
+        lock.lock();
+        try {
+            int e = find(id);
+            if (e == NONE || removeIfExpired(e, ticker.read())) {
+                throw new NoSuchElementException("No value with id " + id);
+            }
+            unlink(prevByRecency, nextByRecency, e);
+            link(prevByRecency, nextByRecency, e);
+            return (V) values[e];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Refresh the timeout of a value, without changing its recency.
+     *
+     * @param id the id of the value
+     * @return true if the buffer has an unexpired value with that id, false otherwise
+     */
+    public boolean touch(long id) {
+        lock.lock();
+        try {
+            long now = ticker.read();
+            int e = find(id);
+            if (e == NONE || removeIfExpired(e, now)) {
+                return false;
+            }
+            refresh(e, now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of unexpired values in the buffer
+     */
+    public int size() {
+        lock.lock();
+        try {
+            removeExpired(ticker.read());
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param id an id
+     * @return the entry holding the value with that id, or NONE if there is none
+     */
+    private int find(long id) {
+        for (int slot = home(id); table[slot] != 0; slot = (slot + 1) & mask) {
+            int e = table[slot] - 1;
+            if (ids[e] == id) {
+                return e;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param id an id
+     * @return the slot of the table where the search for that id starts
+     */
+    private int home(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> shift); // Fibonacci hashing
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return the expiry time of a value added or touched at time {@code now}
+     */
+    private long expiryTime(long now) {
+        return delta > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + delta;
+    }
+
+    private void refresh(int e, long now) {
+        expiryTimes[e] = expiryTime(now);
+        unlink(prevByExpiry, nextByExpiry, e);
+        link(prevByExpiry, nextByExpiry, e);
+    }
+
+    private boolean removeIfExpired(int e, long now) {
+        if (now > expiryTimes[e]) {
+            remove(e);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the expired entries, which are at the head of the expiry list.
+     */
+    private void removeExpired(long now) {
+        int e;
+        while ((e = nextByExpiry[capacity]) != capacity && now > expiryTimes[e]) {
+            remove(e);
+        }
+    }
+
+    /**
+     * Removes an entry from the lists and the table, and puts it on the free list.
+     *
+     * @param e an entry on the recency list
+     */
+    private void remove(int e) {
+        unlink(prevByRecency, nextByRecency, e);
+        unlink(prevByExpiry, nextByExpiry, e);
+        values[e] = null;
+        nextByRecency[e] = free;
+        free = e;
+        size--;
+
+        int hole = home(ids[e]);
+        while (table[hole] != e + 1) {
+            hole = (hole + 1) & mask;
+        }
+        table[hole] = 0;
+        // shift back the entries of the cluster that can no longer be reached across the hole
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int home = home(ids[table[slot] - 1]);
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                table[slot] = 0;
+                hole = slot;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry at the tail of a list, before the sentinel.
+     */
+    private void link(int[] prev, int[] next, int e) {
+        int last = prev[capacity];
+        prev[e] = last;
+        next[e] = capacity;
+        next[last] = e;
+        prev[capacity] = e;
+    }
+
+    private static void unlink(int[] prev, int[] next, int e) {
+        next[prev[e]] = next[e];
+        prev[next[e]] = prev[e];
+    }
+}
@@ -0,0 +1,76 @@
+package fsft.fsftbuffer;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs periodic maintenance tasks on buffers, such as the expiry sweeps of buffers created
+ * with {@link FSFTBuffer.Builder#withExpirySweeper(Duration)} and the tuning of buffers
+ * created with {@link FSFTBuffer.Builder#withAutoTuning(int, Duration, Duration)}. The
+ * scheduler knows nothing of what a task does, so a new kind of maintenance only needs a
+ * new task. Every task runs on the same daemon thread, which starts when the first task is
+ * scheduled, so tasks must be short.
+ *
+ * <p>A task only holds its buffer weakly, and stops running once the buffer has been
+ * garbage collected.</p>
+ */
+class MaintenanceScheduler {
+
+    private static final class Holder {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "fsft-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Task<T> implements Runnable {
+        private final WeakReference<T> buffer;
+        private final Consumer<? super T> action;
+        private volatile ScheduledFuture<?> future;
+
+        Task(T buffer, Consumer<? super T> action) {
+            this.buffer = new WeakReference<>(buffer);
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            T target = buffer.get();
+            if (target == null) {
+                ScheduledFuture<?> scheduled = future;
+                if (scheduled != null) { // null only if the first run beats schedule
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            try {
+                action.accept(target);
+            } catch (RuntimeException e) {
+                // a failing listener or codec must not stop the maintenance of other buffers
+            }
+        }
+    }
+
+    private MaintenanceScheduler() {
+    }
+
+    /**
+     * Run a task on a buffer periodically, until the buffer is garbage collected.
+     *
+     * @param buffer the buffer, is not null; the task only holds it weakly
+     * @param period the time between two runs of the task, is positive
+     * @param action the task, is not null and must not hold the buffer strongly
+     * @param <T> the type of the buffer
+     */
+    static <T> void schedule(T buffer, Duration period, Consumer<? super T> action) {
+        Task<T> task = new Task<>(buffer, action);
+        long nanos = period.toNanos();
+        task.future = Holder.SCHEDULER.scheduleWithFixedDelay(task, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,57 @@
+package fsft.fsftbuffer;
+
+/**
+ * An entry of a {@link FSFTBuffer}. A node is linked into one bucket of the buffer's
+ * {@link TimerWheel}, so that it can be moved or removed in constant time without
+ * searching for it.
+ *
+ * <p>A node whose {@code id} is null is a sentinel that marks the head of a list. The
+ * {@code item} of a node is null if the item is stored outside the node, as in an
+ * {@link OffHeapNode} or a {@link SoftNode}.</p>
+ *
+ * @param <B> the type of the item held by the node
+ */
+class Node<B> {
+    final String id;
+    final B item;
+    final int weight;
+    volatile long expiryTime;
+    /* the time, in milliseconds, at which expiryTime was last set, so that
+       expiryTime - writeTime is the lifetime the item was last given */
+    volatile long writeTime;
+
+    Node<B> prevInTimer;
+    Node<B> nextInTimer;
+
+    /**
+     * Create a sentinel node, which is an empty circular list of its own.
+     */
+    Node() {
+        this(null, null, 0, 0);
+        prevInTimer = this;
+        nextInTimer = this;
+    }
+
+    /**
+     * Create an unlinked node.
+     *
+     * @param id the id of the item
+     * @param item the item held by the node, or null if it is stored elsewhere
+     * @param weight the weight of the item
+     * @param expiryTime the time, in milliseconds, after which the item is expired
+     */
+    Node(String id, B item, int weight, long expiryTime) {
+        this.id = id;
+        this.item = item;
+        this.weight = weight;
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * @param now the current time, in milliseconds
+     * @return true if the item held by this node has expired at time {@code now}
+     */
+    boolean isExpired(long now) {
+        return now > expiryTime;
+    }
+}
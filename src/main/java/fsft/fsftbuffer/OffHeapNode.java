@@ -0,0 +1,24 @@
+package fsft.fsftbuffer;
+
+/**
+ * A node whose item is stored outside the Java heap, in a block of a {@link SlabAllocator}.
+ * Only the id, the weight, and the expiry time of the item stay on the heap.
+ *
+ * @param <B> the type of the item held by the node
+ */
+class OffHeapNode<B> extends Node<B> {
+    final long address;
+
+    /**
+     * Create an unlinked node.
+     *
+     * @param id the id of the item
+     * @param address the address of the block holding the encoded item
+     * @param weight the weight of the item
+     * @param expiryTime the time, in milliseconds, after which the item is expired
+     */
+    OffHeapNode(String id, long address, int weight, long expiryTime) {
+        super(id, null, weight, expiryTime);
+        this.address = address;
+    }
+}
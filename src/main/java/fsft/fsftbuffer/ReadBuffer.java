@@ -0,0 +1,120 @@
+package fsft.fsftbuffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lossy, striped set of ring buffers that records the nodes read by lock-free
+ * {@code get} calls, so that the buffer can replay the accesses into its eviction policy
+ * later, in a batch, under its lock.
+ *
+ * <p>Each thread writes to the stripe chosen by its probe, a per-thread hash in the manner
+ * of {@link java.util.concurrent.atomic.LongAdder}, so threads rarely contend on the same
+ * counter; a thread that loses a race for a slot moves its probe to another stripe. A read
+ * is dropped instead of waiting when its stripe is full or when another thread wins the
+ * race for the slot; losing a few accesses to a hot item does not change its position in
+ * the eviction order in any meaningful way.</p>
+ *
+ * <p>A drain never waits for a writer either: a slot that a writer has won but not filled
+ * yet is skipped, so that a writer descheduled in between cannot stall its stripe and make
+ * it drop every other read until the writer runs again. Its read may then be lost, or be
+ * replayed by a later drain; a replayed or lost access only moves one item slightly in the
+ * eviction order.</p>
+ *
+ * <p>{@link #offer(Node)} can be called by any thread. {@link #drain(Consumer)} must only
+ * be called by the thread holding the lock of the owning buffer.</p>
+ *
+ * @param <B> the type of the items held by the recorded nodes
+ */
+class ReadBuffer<B> {
+
+    // Abstraction Function:
+    //      AF(r) = for each stripe s of r.stripes, the sequence of nodes in s.slots at
+    //      positions s.readCounter, ..., s.writeCounter - 1 (taken modulo STRIPE_SIZE)
+
+    // Rep Invariant is
+    //      stripes.length is a power of two
+    //      for each stripe, 0 <= writeCounter - readCounter <= STRIPE_SIZE
+
+    /* the number of reads a stripe holds before it asks to be drained */
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    /* the probe of each thread, never 0; shared by all read buffers */
+    private static final ThreadLocal<int[]> PROBE =
+            ThreadLocal.withInitial(() -> new int[] {System.identityHashCode(Thread.currentThread()) * 0x9E3779B9 | 1});
+
+    private final Stripe<B>[] stripes;
+
+    /**
+     * Create an empty read buffer with a stripe for roughly each available processor.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Record a read, without blocking.
+     *
+     * @param node the node that was read
+     * @return true if the stripe that recorded (or dropped) the read is full and should
+     *         be drained, false otherwise
+     */
+    boolean offer(Node<B> node) {
+        int[] probe = PROBE.get();
+        Stripe<B> stripe = stripes[(probe[0] ^ (probe[0] >>> 16)) & (stripes.length - 1)];
+        long tail = stripe.writeCounter.get();
+        long size = tail - stripe.readCounter;
+        if (size >= STRIPE_SIZE) {
+            return true;
+        }
+        if (stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            stripe.slots.lazySet((int) (tail & STRIPE_MASK), node);
+            return size + 1 >= STRIPE_SIZE;
+        }
+        probe[0] = rehash(probe[0]);
+        return false;
+    }
+
+    /**
+     * Replay every recorded read, oldest first within each stripe.
+     *
+     * @param onRead called with each recorded node
+     */
+    void drain(Consumer<Node<B>> onRead) {
+        for (Stripe<B> stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & STRIPE_MASK);
+                Node<B> node = stripe.slots.getAndSet(index, null);
+                // a null slot was won by a writer that has not published its node yet; its read
+                // is dropped rather than stalling the stripe until that writer runs again
+                if (node != null) {
+                    onRead.accept(node);
+                }
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    /**
+     * @return the next value of a xorshift generator after {@code probe}, which is not 0
+     */
+    private static int rehash(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        return probe ^ (probe << 5);
+    }
+
+    private static class Stripe<B> {
+        final AtomicReferenceArray<Node<B>> slots = new AtomicReferenceArray<>(STRIPE_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+    }
+}
@@ -0,0 +1,223 @@
+package fsft.fsftbuffer;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Allocates variable-sized blocks of memory outside the Java heap. Memory is reserved from
+ * the operating system in large slabs of direct {@link ByteBuffer}s, and each block is
+ * carved out of a slab with a best-fit search of the free blocks. A freed block is merged
+ * with the free blocks on either side of it, so that the free list does not fragment into
+ * many small blocks, and a slab whose blocks are all free is handed back. A block larger
+ * than a slab gets a slab of its own.
+ *
+ * <p>Each block starts with a 4-byte header holding the length of its contents, and is
+ * rounded up to a multiple of 8 bytes. A block is identified by its address, which is the
+ * index of its slab in the high 32 bits and its offset within the slab in the low 32 bits.</p>
+ *
+ * <p>A {@code SlabAllocator} is not thread-safe; the owning buffer must hold its lock.</p>
+ */
+class SlabAllocator {
+
+    // Abstraction Function:
+    //      AF(r) = the set of blocks allocated from r.slabs, where the blocks of slab i are
+    //      the ranges of r.slabs.get(i) that are not in r.freeByAddress
+
+    // Rep Invariant is
+    //      slabSize > HEADER and is a multiple of ALIGNMENT
+    //      a slab of capacity slabSize is covered exactly by its allocated and free blocks
+    //      a slab of another capacity holds a single allocated block and has no free blocks
+    //      freeByAddress and freeBySize hold the same blocks
+    //      no two free blocks are adjacent
+    //      no slab is entirely free
+    //      usedBytes is the total size of the allocated blocks
+    //      the indexes in unusedIndexes are exactly the indexes i for which slabs.get(i) is null
+
+    /* the default slab size is 4 MiB */
+    static final int DEFAULT_SLAB_SIZE = 1 << 22;
+    private static final int HEADER = Integer.BYTES;
+    private static final int ALIGNMENT = 8;
+
+    private record Block(long address, int size) {
+    }
+
+    private static final Comparator<Block> BY_SIZE =
+            Comparator.comparingInt(Block::size).thenComparingLong(Block::address);
+
+    private final int slabSize;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final Deque<Integer> unusedIndexes = new ArrayDeque<>();
+    private final NavigableMap<Long, Block> freeByAddress = new TreeMap<>();
+    private final NavigableSet<Block> freeBySize = new TreeSet<>(BY_SIZE);
+    /* an emptied slab kept back, so that a buffer that hovers around a slab boundary does
+       not reserve and release a slab on every put */
+    private ByteBuffer spare = null;
+    private long usedBytes = 0;
+
+    /**
+     * Create an allocator that has not reserved any memory yet.
+     *
+     * @param slabSize the number of bytes reserved at a time, is a positive multiple of 8
+     */
+    SlabAllocator(int slabSize) {
+        if (slabSize <= HEADER || slabSize % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Slab size must be a positive multiple of " + ALIGNMENT);
+        }
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Allocate a block and copy bytes into it.
+     *
+     * @param contents the bytes to store, is not null
+     * @return the address of the new block
+     */
+    long allocate(byte[] contents) {
+        int size = blockSize(contents.length);
+        long address;
+        if (size > slabSize) {
+            address = address(addSlab(ByteBuffer.allocateDirect(size)), 0);
+        } else {
+            Block block = freeBySize.ceiling(new Block(Long.MIN_VALUE, size));
+            if (block == null) {
+                int index = addSlab(spare != null ? spare : ByteBuffer.allocateDirect(slabSize));
+                spare = null;
+                block = new Block(address(index, 0), slabSize);
+            } else {
+                removeFree(block);
+            }
+            if (block.size() > size) {
+                addFree(new Block(block.address() + size, block.size() - size));
+            }
+            address = block.address();
+        }
+        ByteBuffer slab = slabs.get(slabIndex(address));
+        slab.putInt(offset(address), contents.length);
+        slab.put(offset(address) + HEADER, contents);
+        usedBytes += size;
+        return address;
+    }
+
+    /**
+     * @param address the address of an allocated block
+     * @return a read-only view of the contents of the block, which is only valid until the
+     *         block is freed
+     */
+    ByteBuffer read(long address) {
+        ByteBuffer slab = slabs.get(slabIndex(address));
+        int length = slab.getInt(offset(address));
+        return slab.slice(offset(address) + HEADER, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Free a block, merging it with the free blocks around it.
+     *
+     * @param address the address of an allocated block, which must not be used afterwards
+     */
+    void free(long address) {
+        int index = slabIndex(address);
+        ByteBuffer slab = slabs.get(index);
+        int size = blockSize(slab.getInt(offset(address)));
+        usedBytes -= size;
+        if (slab.capacity() != slabSize) {
+            removeSlab(index);
+            return;
+        }
+        Block block = new Block(address, size);
+        Map.Entry<Long, Block> before = freeByAddress.lowerEntry(address);
+        if (before != null && before.getValue().address() + before.getValue().size() == address) {
+            removeFree(before.getValue());
+            block = new Block(before.getKey(), before.getValue().size() + block.size());
+        }
+        Block after = freeByAddress.get(address + size);
+        if (after != null) {
+            removeFree(after);
+            block = new Block(block.address(), block.size() + after.size());
+        }
+        if (block.size() == slabSize) {
+            if (spare == null) {
+                spare = slab;
+            }
+            removeSlab(index);
+        } else {
+            addFree(block);
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by allocated blocks, including their headers and
+     *         alignment
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of bytes reserved from the operating system, including the spare
+     *         slab
+     */
+    long reservedBytes() {
+        long reserved = spare != null ? spare.capacity() : 0;
+        for (ByteBuffer slab : slabs) {
+            if (slab != null) {
+                reserved += slab.capacity();
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * @param length the number of bytes to store
+     * @return the size of the block needed to store them
+     */
+    private static int blockSize(int length) {
+        int size = HEADER + length;
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static long address(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+    private static int slabIndex(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * @param slab the slab to add
+     * @return the index of the slab
+     */
+    private int addSlab(ByteBuffer slab) {
+        if (unusedIndexes.isEmpty()) {
+            slabs.add(slab);
+            return slabs.size() - 1;
+        }
+        int index = unusedIndexes.pop();
+        slabs.set(index, slab);
+        return index;
+    }
+
+    /**
+     * Drop a slab, so that its memory is released once the slab is garbage collected.
+     *
+     * @param index the index of a slab that has no allocated or free blocks
+     */
+    private void removeSlab(int index) {
+        slabs.set(index, null);
+        unusedIndexes.push(index);
+    }
+
+    private void addFree(Block block) {
+        freeByAddress.put(block.address(), block);
+        freeBySize.add(block);
+    }
+
+    private void removeFree(Block block) {
+        freeByAddress.remove(block.address());
+        freeBySize.remove(block);
+    }
+}
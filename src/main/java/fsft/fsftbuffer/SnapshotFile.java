@@ -0,0 +1,193 @@
+package fsft.fsftbuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the snapshot files of {@link FSFTBuffer#snapshot(Path, BufferableCodec)}.
+ * A snapshot file is written and read sequentially through a file channel, with a single
+ * direct buffer of 64 KiB.
+ *
+ * <p>The file starts with a magic number, a format version, the wall-clock time of the
+ * snapshot in milliseconds, and the number of entries. Each entry is the remaining lifetime
+ * of an item in milliseconds as a {@code long}, the length of the encoded item as an
+ * {@code int}, and the encoded item. Entries are in eviction order, from the next victim to
+ * the most recently used item.</p>
+ */
+class SnapshotFile {
+
+    private static final int MAGIC = 0x46534654; // "FSFT"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ENTRY_HEADER = Long.BYTES + Integer.BYTES;
+
+    /**
+     * An item of a snapshot.
+     *
+     * @param item the item
+     * @param remaining the number of milliseconds the item had left to live when the
+     *                  snapshot was taken
+     * @param <B> the type of the item
+     */
+    record Entry<B>(B item, long remaining) {
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Write a snapshot file. The file is written next to {@code path} and moved into place
+     * once it is complete, so that a reader never sees a partial snapshot.
+     *
+     * @param path the file to write, is replaced if it exists
+     * @param entries the entries in eviction order
+     * @param codec converts the items to bytes
+     * @param <B> the type of the items
+     * @throws IOException if the file cannot be written
+     */
+    static <B extends Bufferable> void write(Path path, List<Entry<B>> entries, BufferableCodec<B> codec)
+            throws IOException {
+        Path partial = path.resolveSibling(path.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(entries.size());
+            for (Entry<B> entry : entries) {
+                byte[] bytes = codec.encode(entry.item());
+                if (buffer.remaining() < ENTRY_HEADER) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(entry.remaining()).putInt(bytes.length);
+                if (bytes.length <= buffer.remaining()) {
+                    buffer.put(bytes);
+                } else {
+                    drain(channel, buffer);
+                    writeFully(channel, ByteBuffer.wrap(bytes));
+                }
+            }
+            drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the entries of a snapshot file in order.
+     *
+     * @param <B> the type of the items
+     */
+    static class Reader<B extends Bufferable> implements Closeable {
+        private final FileChannel channel;
+        private final BufferableCodec<B> codec;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final long snapshotTime;
+        private int unread;
+
+        /**
+         * Open a snapshot file and read its header.
+         *
+         * @param path the file to read
+         * @param codec converts the items from bytes
+         * @throws IOException if the file cannot be read or is not a snapshot file
+         */
+        Reader(Path path, BufferableCodec<B> codec) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.codec = codec;
+            try {
+                buffer.limit(0);
+                require(2 * Integer.BYTES + Long.BYTES + Integer.BYTES);
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("Not a buffer snapshot: " + path);
+                }
+                snapshotTime = buffer.getLong();
+                unread = buffer.getInt();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the wall-clock time at which the snapshot was taken, in milliseconds
+         */
+        long snapshotTime() {
+            return snapshotTime;
+        }
+
+        /**
+         * Read the next entries of the file.
+         *
+         * @param max the maximum number of entries to read, is positive
+         * @return the next entries, in order; empty once every entry has been read
+         * @throws IOException if the file cannot be read or is truncated
+         */
+        List<Entry<B>> next(int max) throws IOException {
+            List<Entry<B>> entries = new ArrayList<>(Math.min(max, unread));
+            while (unread > 0 && entries.size() < max) {
+                require(ENTRY_HEADER);
+                long remaining = buffer.getLong();
+                int length = buffer.getInt();
+                B item;
+                if (length <= BUFFER_SIZE) {
+                    require(length);
+                    int end = buffer.position() + length;
+                    item = codec.decode(buffer.slice(buffer.position(), length).asReadOnlyBuffer());
+                    buffer.position(end);
+                } else {
+                    ByteBuffer bytes = ByteBuffer.allocate(length);
+                    bytes.put(buffer);
+                    while (bytes.hasRemaining()) {
+                        if (channel.read(bytes) < 0) {
+                            throw new IOException("Truncated buffer snapshot");
+                        }
+                    }
+                    item = codec.decode(bytes.flip().asReadOnlyBuffer());
+                }
+                entries.add(new Entry<>(item, remaining));
+                unread--;
+            }
+            return entries;
+        }
+
+        /**
+         * Make sure the buffer holds at least {@code length} unread bytes.
+         */
+        private void require(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < length) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated buffer snapshot");
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package fsft.fsftbuffer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+
+/**
+ * A node that holds its item through a {@link SoftReference}, so that the garbage collector
+ * can reclaim the item when the heap runs low. Once the item has been reclaimed, its
+ * reference is enqueued on the queue given to the node, from which the buffer removes the
+ * node.
+ *
+ * @param <B> the type of the item held by the node
+ */
+class SoftNode<B> extends Node<B> {
+    final Value<B> value;
+
+    /**
+     * A soft reference to the item of a node, which remembers the node it belongs to.
+     *
+     * @param <B> the type of the item
+     */
+    static class Value<B> extends SoftReference<B> {
+        final SoftNode<B> node;
+
+        Value(B item, SoftNode<B> node, ReferenceQueue<? super B> queue) {
+            super(item, queue);
+            this.node = node;
+        }
+    }
+
+    /**
+     * Create an unlinked node.
+     *
+     * @param id the id of the item
+     * @param item the item held by the node
+     * @param weight the weight of the item
+     * @param expiryTime the time, in milliseconds, after which the item is expired
+     * @param queue the queue the reference to the item is enqueued on once the item has
+     *              been reclaimed
+     */
+    SoftNode(String id, B item, int weight, long expiryTime, ReferenceQueue<? super B> queue) {
+        super(id, null, weight, expiryTime);
+        this.value = new Value<>(item, this, queue);
+    }
+}
@@ -0,0 +1,77 @@
+package fsft.fsftbuffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters behind {@link CacheStats}. Each counter is a {@link LongAdder}, which
+ * spreads concurrent increments over several cells, so that recording from many threads
+ * does not contend on a single memory location.
+ *
+ * <p>A {@code StatsCounter} is thread-safe.</p>
+ */
+class StatsCounter {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder duplicatePuts = new LongAdder();
+    private final LongAdder touches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expiries = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordPut() {
+        puts.increment();
+    }
+
+    void recordDuplicatePut() {
+        duplicatePuts.increment();
+    }
+
+    void recordTouch() {
+        touches.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordExpiry() {
+        expiries.increment();
+    }
+
+    /**
+     * @param nanos the duration of a loader call that returned an item
+     */
+    void recordLoadSuccess(long nanos) {
+        loadSuccesses.increment();
+        loadTime.add(nanos);
+    }
+
+    /**
+     * @param nanos the duration of a loader call that failed
+     */
+    void recordLoadFailure(long nanos) {
+        loadFailures.increment();
+        loadTime.add(nanos);
+    }
+
+    /**
+     * @return the current values of the counters. The counters are read one at a time, so
+     *         a snapshot taken while other threads record may be off by a few events
+     */
+    CacheStats snapshot() {
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), duplicatePuts.sum(),
+                touches.sum(), evictions.sum(), expiries.sum(), loadSuccesses.sum(),
+                loadFailures.sum(), loadTime.sum());
+    }
+}
@@ -0,0 +1,45 @@
+package fsft.fsftbuffer;
+
+/**
+ * A source of the current time in milliseconds, which a buffer reads to decide when its
+ * objects expire. See {@link FSFTBuffer.Builder#withTicker(Ticker)}.
+ *
+ * <p>Only differences between readings matter, so a ticker does not have to count from the
+ * epoch, but it is expected to be non-decreasing. Expiry tolerates small steps back, such
+ * as the wall clock being adjusted: the timing wheel ignores a reading older than the last
+ * one, so objects only expire later than they would have. Tests and benchmarks can drive
+ * the time of a buffer with a ticker they advance by hand.</p>
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * @return the current time, in milliseconds
+     */
+    long read();
+
+    /**
+     * @return a ticker that reads {@link System#currentTimeMillis()} every time; the default
+     *         ticker of the buffers in this package. It follows the wall clock, so it can
+     *         step back when the clock is adjusted.
+     */
+    static Ticker system() {
+        return System::currentTimeMillis;
+    }
+
+    /**
+     * Returns a ticker that reads a cached time instead of the system clock. A single daemon
+     * thread, started on first use and shared by every caller, updates the cached time about
+     * once per millisecond, so a reading costs one volatile load but can lag the system clock
+     * by a millisecond or so (more if that thread is not scheduled in time).
+     *
+     * <p>The thread wakes up a thousand times a second for the life of the JVM, which keeps
+     * an otherwise idle core from sleeping; it is only worth it for buffers read at far
+     * higher rates, and is opt-in through {@link FSFTBuffer.Builder#withTicker(Ticker)}.</p>
+     *
+     * @return the shared coarse ticker
+     */
+    static Ticker coarse() {
+        return CoarseTicker.INSTANCE;
+    }
+}
@@ -0,0 +1,175 @@
+package fsft.fsftbuffer;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel that indexes the nodes of a buffer by expiry time, so that
+ * expired nodes can be found without looking at the nodes that are still alive.
+ *
+ * <p>The wheel has several levels of buckets. The first level has one bucket per millisecond
+ * for the next ~1 second, and each following level has coarser buckets that cover a longer
+ * span (~1 minute, ~1 hour, ~1.5 days, and an overflow bucket for everything beyond). When
+ * time advances, the buckets whose span has passed are emptied: expired nodes are handed
+ * back to the buffer and the others are rescheduled into a finer bucket. Every node is
+ * therefore moved at most once per level, which makes expiration amortized O(1) per node.</p>
+ *
+ * <p>A {@code TimerWheel} is not thread-safe; the owning buffer must hold its lock.</p>
+ *
+ * @param <B> the type of the items held by the nodes
+ */
+class TimerWheel<B> {
+
+    // Abstraction Function:
+    //      AF(r) = the set of nodes linked into the buckets of r.wheel, where a node in
+    //      r.wheel[i][j] expires within the span of the j-th bucket of level i as of r.time
+
+    // Rep Invariant is
+    //      wheel[i].length == BUCKETS[i] and is a power of two
+    //      every bucket of wheel is a sentinel node heading a circular list
+    //      a node is linked into at most one bucket
+
+    private static final int[] BUCKETS = {1024, 64, 64, 32, 1};
+    private static final int[] SHIFTS = {0, 10, 16, 22, 27};
+
+    private final Node<B>[][] wheel;
+    private long time;
+
+    /**
+     * Create an empty timing wheel.
+     *
+     * @param now the current time, in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(long now) {
+        wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = new Node<>();
+            }
+        }
+        time = now;
+    }
+
+    /**
+     * Add a node to the bucket matching its expiry time.
+     *
+     * @param node the node to add, is not linked into the wheel
+     */
+    void schedule(Node<B> node) {
+        Node<B> sentinel = findBucket(node.expiryTime);
+        node.prevInTimer = sentinel.prevInTimer;
+        node.nextInTimer = sentinel;
+        sentinel.prevInTimer.nextInTimer = node;
+        sentinel.prevInTimer = node;
+    }
+
+    /**
+     * Move a node to the bucket matching its (updated) expiry time.
+     *
+     * @param node the node to move
+     */
+    void reschedule(Node<B> node) {
+        deschedule(node);
+        schedule(node);
+    }
+
+    /**
+     * Remove a node from the wheel, if it is linked into it.
+     *
+     * @param node the node to remove
+     */
+    void deschedule(Node<B> node) {
+        if (node.nextInTimer == null) {
+            return;
+        }
+        node.prevInTimer.nextInTimer = node.nextInTimer;
+        node.nextInTimer.prevInTimer = node.prevInTimer;
+        node.prevInTimer = null;
+        node.nextInTimer = null;
+    }
+
+    /**
+     * @return the time the wheel was last advanced to, in milliseconds
+     */
+    long time() {
+        return time;
+    }
+
+    /**
+     * Advance the wheel to the current time, removing every node that has expired.
+     *
+     * @param now the current time, in milliseconds
+     * @param onExpired called with each expired node after it has been removed from the wheel
+     * @return the number of expired nodes
+     */
+    int advance(long now, Consumer<Node<B>> onExpired) {
+        if (now <= time) {
+            return 0;
+        }
+        long previous = time;
+        time = now;
+        int expired = 0;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+            expired += expire(i, previousTicks, currentTicks - previousTicks, onExpired);
+        }
+        return expired;
+    }
+
+    /**
+     * Empty the buckets of one level that were passed over while time advanced.
+     *
+     * @param level the level of the wheel
+     * @param previousTicks the tick of this level before time advanced
+     * @param delta the number of ticks of this level that passed
+     * @param onExpired called with each expired node
+     * @return the number of expired nodes
+     */
+    private int expire(int level, long previousTicks, long delta, Consumer<Node<B>> onExpired) {
+        Node<B>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        int expired = 0;
+        for (int i = start; i < start + steps; i++) {
+            Node<B> sentinel = buckets[i & mask];
+            Node<B> node = sentinel.nextInTimer;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            while (node != sentinel) {
+                Node<B> next = node.nextInTimer;
+                node.prevInTimer = null;
+                node.nextInTimer = null;
+                if (node.isExpired(time)) {
+                    onExpired.accept(node);
+                    expired++;
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @param expiryTime the time, in milliseconds, at which a node expires
+     * @return the sentinel of the bucket a node with the given expiry time belongs in
+     */
+    private Node<B> findBucket(long expiryTime) {
+        long duration = expiryTime - time;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < 1L << SHIFTS[i + 1]) {
+                long ticks = expiryTime >>> SHIFTS[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+}
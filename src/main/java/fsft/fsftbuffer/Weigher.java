@@ -0,0 +1,19 @@
+package fsft.fsftbuffer;
+
+/**
+ * Computes the weight of an object in a buffer, so that the capacity of the buffer can be
+ * a total weight (for example, an approximate number of bytes) instead of a number of
+ * objects. See {@link FSFTBuffer.Builder#withWeigher(Weigher)}.
+ *
+ * @param <B> the type of objects being weighed
+ */
+@FunctionalInterface
+public interface Weigher<B> {
+
+    /**
+     * @param item the object to weigh, is not null
+     * @return the weight of {@code item}; is not negative and must not change while the
+     *         object is in the buffer
+     */
+    int weigh(B item);
+}
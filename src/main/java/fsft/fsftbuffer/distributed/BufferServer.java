@@ -0,0 +1,216 @@
+package fsft.fsftbuffer.distributed;
+
+import fsft.fsftbuffer.Buffer;
+import fsft.fsftbuffer.Bufferable;
+import fsft.fsftbuffer.BufferableCodec;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves a local buffer to {@link DistributedBuffer}s over TCP, as one node of a
+ * distributed buffer. Each connection is served by its own daemon thread, which answers
+ * the requests of the connection in order; see {@link Protocol} for the format.
+ *
+ * <p>The server does not check that the items it is given belong to it on the hash ring;
+ * routing is up to the clients.</p>
+ *
+ * @param <B> the type of objects in the buffer; implements the {@link Bufferable} interface
+ */
+public class BufferServer<B extends Bufferable> implements Closeable {
+
+    // Abstraction Function:
+    //      AF(r) = a node at r.address() that holds the items of r.buffer, for as long as
+    //      r.serverSocket is open
+
+    // Rep Invariant is
+    //      buffer, codec and serverSocket are not null
+    //      connections holds the open sockets accepted by serverSocket
+
+    private final Buffer<B> buffer;
+    private final BufferableCodec<B> codec;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Start serving a buffer.
+     *
+     * @param buffer the buffer to serve, is not null
+     * @param codec converts the items of the buffer to and from bytes, is not null
+     * @param address the address to listen on, is not null; port 0 picks a free port
+     * @throws IOException if the server cannot listen on {@code address}
+     */
+    public BufferServer(Buffer<B> buffer, BufferableCodec<B> codec, InetSocketAddress address)
+            throws IOException {
+        if (buffer == null || codec == null || address == null) {
+            throw new IllegalArgumentException("Buffer, codec and address cannot be null");
+        }
+        this.buffer = buffer;
+        this.codec = codec;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        Thread acceptor = new Thread(this::accept, "fsft-server-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the address the server listens on, with the port it was given if it was
+     *         created with port 0
+     */
+    public InetSocketAddress address() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Stop serving, and close every open connection. The buffer itself is left as is.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return; // the server socket was closed
+            }
+            connections.add(socket);
+            if (serverSocket.isClosed()) { // close() may have missed the new socket
+                closeQuietly(socket);
+                return;
+            }
+            Thread handler = new Thread(() -> serve(socket), "fsft-connection-" + socket.getPort());
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // the client closed the connection
+                }
+                answer(op, in, out);
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // the connection was reset, or closed by close()
+        } catch (IOException e) {
+            // a malformed request; the client sees the connection close
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Reads the arguments of a request and writes its response.
+     */
+    private void answer(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case Protocol.PUT -> {
+                byte[] bytes = Protocol.readItem(in);
+                try {
+                    boolean added = buffer.put(codec.decode(ByteBuffer.wrap(bytes).asReadOnlyBuffer()));
+                    out.writeByte(Protocol.OK);
+                    out.writeBoolean(added);
+                } catch (RuntimeException e) {
+                    error(out, e);
+                }
+            }
+            case Protocol.GET -> {
+                String id = in.readUTF();
+                byte[] bytes;
+                try {
+                    bytes = codec.encode(buffer.get(id));
+                } catch (NoSuchElementException e) {
+                    bytes = null;
+                } catch (RuntimeException e) {
+                    error(out, e);
+                    return;
+                }
+                out.writeByte(Protocol.OK);
+                out.writeBoolean(bytes != null);
+                if (bytes != null) {
+                    Protocol.writeItem(out, bytes);
+                }
+            }
+            case Protocol.TOUCH -> {
+                String id = in.readUTF();
+                try {
+                    boolean touched = buffer.touch(id);
+                    out.writeByte(Protocol.OK);
+                    out.writeBoolean(touched);
+                } catch (RuntimeException e) {
+                    error(out, e);
+                }
+            }
+            case Protocol.REMOVE -> {
+                String id = in.readUTF();
+                try {
+                    boolean removed = buffer.remove(id);
+                    out.writeByte(Protocol.OK);
+                    out.writeBoolean(removed);
+                } catch (RuntimeException e) {
+                    error(out, e);
+                }
+            }
+            case Protocol.ITEMS -> {
+                List<byte[]> items = new ArrayList<>();
+                try { // encode everything first, so that a failing codec cannot cut a response short
+                    for (B item : buffer.currentItems()) {
+                        items.add(codec.encode(item));
+                    }
+                } catch (RuntimeException e) {
+                    error(out, e);
+                    return;
+                }
+                out.writeByte(Protocol.OK);
+                out.writeInt(items.size());
+                for (byte[] bytes : items) {
+                    Protocol.writeItem(out, bytes);
+                }
+            }
+            case Protocol.STATS -> {
+                out.writeByte(Protocol.OK);
+                Protocol.writeStats(out, buffer.stats());
+            }
+            default -> throw new IOException("Unknown request " + op);
+        }
+    }
+
+    private static void error(DataOutputStream out, RuntimeException e) throws IOException {
+        out.writeByte(Protocol.ERROR);
+        out.writeUTF(String.valueOf(e.getMessage()));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+}
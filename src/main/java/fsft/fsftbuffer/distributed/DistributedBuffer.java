@@ -0,0 +1,516 @@
+package fsft.fsftbuffer.distributed;
+
+import fsft.fsftbuffer.Buffer;
+import fsft.fsftbuffer.Bufferable;
+import fsft.fsftbuffer.BufferableCodec;
+import fsft.fsftbuffer.CacheStats;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A buffer spread over several nodes, each a {@link BufferServer} holding its share of
+ * the objects. Every operation on an id is routed to the node that owns the id on a
+ * consistent-hash ring, so each object lives on exactly one node and the capacity and
+ * timeout of the buffer are those of the node buffers.
+ *
+ * <p>Nodes can join and leave while the buffer is in use. {@link #addNode(InetSocketAddress)}
+ * moves the objects that the new node takes over from the other nodes, and
+ * {@link #removeNode(InetSocketAddress)} moves the objects of the leaving node to their
+ * new owners, so that a change of membership only costs the misses of the objects that
+ * change hands while they are being copied. Since each node has many points on the ring,
+ * a joining node takes a share from every node and a leaving node spreads its share over
+ * all the others.</p>
+ *
+ * <p>Notes:</p>
+ * <ul>
+ *     <li>{@code DistributedBuffer} is thread-safe; each thread borrows its own connection
+ *     to a node, and idle connections are kept for reuse</li>
+ *     <li>A moved object starts a new timeout on its new node, and is removed from its old
+ *     node, so that a stale copy cannot be found again if the old node owns the object
+ *     again later</li>
+ *     <li>The ring is not shared: every {@code DistributedBuffer} over the same nodes must
+ *     be told of the same joins and leaves, or they will route some ids differently</li>
+ *     <li>Concurrent misses for the same id share a single load only within one
+ *     {@code DistributedBuffer}; two clients that miss on the same id both load it</li>
+ *     <li>An operation on an unreachable node throws an {@link UncheckedIOException}, and an
+ *     operation that fails on its node throws an {@link IllegalStateException}</li>
+ * </ul>
+ *
+ * @param <B> the type of objects in the buffer; implements the {@link Bufferable} interface
+ */
+public class DistributedBuffer<B extends Bufferable> implements Buffer<B>, Closeable {
+
+    // Abstraction Function:
+    //      AF(r) = the union over the nodes n of r.ring of the objects of the buffer served
+    //      at n whose ids r.ring assigns to n
+
+    // Rep Invariant is
+    //      codec and ring are not null, and ring has at least one node
+    //      idle only holds connections that are open and have no request in progress
+    //      loads maps the ids being loaded by get(id, loader) to the pending result
+
+    /* the number of points of each node on the ring */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+    /* how long to wait for a connection to a node, in milliseconds */
+    static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    /* how long to wait for the response of a node, in milliseconds */
+    static final int READ_TIMEOUT_MILLIS = 10_000;
+
+    private final BufferableCodec<B> codec;
+    private volatile HashRing ring;
+    private final ReentrantLock membership = new ReentrantLock();
+    private final Map<InetSocketAddress, Queue<Connection>> idle = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<B>> loads = new ConcurrentHashMap<>();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * Create a buffer over a set of nodes, with {@link #DEFAULT_VIRTUAL_NODES} points per node.
+     *
+     * @param nodes the addresses of the servers of the nodes, is not null or empty
+     * @param codec converts objects to and from bytes, is not null
+     */
+    public DistributedBuffer(Collection<InetSocketAddress> nodes, BufferableCodec<B> codec) {
+        this(nodes, codec, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Create a buffer over a set of nodes.
+     *
+     * @param nodes the addresses of the servers of the nodes, is not null or empty
+     * @param codec converts objects to and from bytes, is not null
+     * @param virtualNodes the number of points of each node on the ring, is positive; more
+     *                     points balance the nodes better and make routing a little slower
+     */
+    public DistributedBuffer(Collection<InetSocketAddress> nodes, BufferableCodec<B> codec,
+                             int virtualNodes) {
+        if (nodes == null || nodes.isEmpty() || codec == null) {
+            throw new IllegalArgumentException("Nodes cannot be null or empty, and codec cannot be null");
+        }
+        HashRing ring = new HashRing(virtualNodes);
+        for (InetSocketAddress node : nodes) {
+            ring = ring.with(node);
+        }
+        this.ring = ring;
+        this.codec = codec;
+    }
+
+    @Override
+    public boolean put(B b) {
+        if (b == null) {
+            throw new IllegalArgumentException("Object cannot be null");
+        }
+        return put(ring.nodeFor(b.id()), codec.encode(b));
+    }
+
+    @Override
+    public B get(String id) {
+        B item = getIfPresent(id);
+        if (item == null) {
+            throw new NoSuchElementException("No object with id " + id);
+        }
+        return item;
+    }
+
+    /**
+     * Gets the object with the given id, loading it with {@code loader} on this client and
+     * adding it to its node if it is missing.
+     *
+     * @param id the identifier of the object to be retrieved, is not null
+     * @param loader computes the object with the given id, is not null
+     * @return the object that matches the identifier
+     * @throws NoSuchElementException if the loader returns null
+     * @throws IllegalArgumentException if the loader returns an object with another id
+     */
+    @Override
+    public B get(String id, Function<? super String, ? extends B> loader) {
+        if (id == null || loader == null) {
+            throw new IllegalArgumentException("ID and loader cannot be null");
+        }
+        B item = getIfPresent(id);
+        if (item != null) {
+            return item;
+        }
+        CompletableFuture<B> load = new CompletableFuture<>();
+        CompletableFuture<B> inFlight = loads.putIfAbsent(id, load);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            item = load(loader, id);
+            if (item == null) {
+                throw new NoSuchElementException("Loader returned no item with given id");
+            }
+            if (!id.equals(item.id())) {
+                throw new IllegalArgumentException("Loader returned an item with another id");
+            }
+            put(item);
+            load.complete(item);
+            return item;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
+        }
+    }
+
+    @Override
+    public boolean touch(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        return call(ring.nodeFor(id), Protocol.TOUCH, out -> out.writeUTF(id), DataInputStream::readBoolean);
+    }
+
+    @Override
+    public boolean remove(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        return remove(ring.nodeFor(id), id);
+    }
+
+    /**
+     * @return the unexpired objects of every node that the node owns; the objects put on
+     *         a node while it did not own them, during a change of membership, are not
+     *         included
+     */
+    @Override
+    public Set<B> currentItems() {
+        HashRing ring = this.ring;
+        Set<B> items = new HashSet<>();
+        for (InetSocketAddress node : ring.nodes()) {
+            for (B item : items(node)) {
+                if (ring.nodeFor(item.id()).equals(node)) {
+                    items.add(item);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(items);
+    }
+
+    /**
+     * @return the sum of the counters of every node, with the loads of this client
+     */
+    @Override
+    public CacheStats stats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0, 0,
+                loadSuccesses.sum(), loadFailures.sum(), loadTime.sum());
+        for (InetSocketAddress node : ring.nodes()) {
+            stats = stats.plus(call(node, Protocol.STATS, out -> { }, Protocol::readStats));
+        }
+        return stats;
+    }
+
+    /**
+     * @return the nodes of the buffer, in the order they joined
+     */
+    public Set<InetSocketAddress> nodes() {
+        return ring.nodes();
+    }
+
+    /**
+     * Add a node to the buffer, and move to it the objects it takes over from the other
+     * nodes. Lookups of those objects may miss until they are moved. The node is contacted
+     * before any id is routed to it, and the objects are only removed from the other nodes
+     * once they have all been copied, so a node that cannot be reached, or a failure while
+     * the objects are copied, leaves the buffer as it was.
+     *
+     * @param node the address of the server of the node, is not null
+     * @return true if the node was added, false if it was already a node of the buffer
+     * @throws UncheckedIOException if a node cannot be reached while the objects are
+     *         copied; the node is then not added
+     */
+    public boolean addNode(InetSocketAddress node) {
+        if (node == null) {
+            throw new IllegalArgumentException("Node cannot be null");
+        }
+        membership.lock();
+        try {
+            HashRing before = ring;
+            if (before.nodes().contains(node)) {
+                return false;
+            }
+            call(node, Protocol.STATS, out -> { }, Protocol::readStats); // fails if the node is unreachable
+            HashRing after = before.with(node);
+            ring = after;
+            Map<InetSocketAddress, List<String>> moved = new LinkedHashMap<>();
+            try {
+                for (InetSocketAddress other : before.nodes()) {
+                    for (B item : items(other)) {
+                        if (after.nodeFor(item.id()).equals(node)) {
+                            put(node, codec.encode(item));
+                            moved.computeIfAbsent(other, k -> new ArrayList<>()).add(item.id());
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                ring = before; // the objects are all still on their previous nodes
+                throw e;
+            }
+            moved.forEach((other, ids) -> ids.forEach(id -> remove(other, id)));
+            return true;
+        } finally {
+            membership.unlock();
+        }
+    }
+
+    /**
+     * Remove a node from the buffer, and move its objects to the nodes that take them
+     * over. If the node cannot be reached, its objects are lost and are loaded again on
+     * their next miss; if it is reached but fails while its objects are removed, the
+     * objects not removed yet are left on it.
+     *
+     * @param node the address of the server of the node, is not null
+     * @return true if the node was removed, false if it was not a node of the buffer
+     * @throws IllegalArgumentException if {@code node} is the last node of the buffer
+     */
+    public boolean removeNode(InetSocketAddress node) {
+        if (node == null) {
+            throw new IllegalArgumentException("Node cannot be null");
+        }
+        membership.lock();
+        try {
+            HashRing before = ring;
+            if (!before.nodes().contains(node)) {
+                return false;
+            }
+            if (before.nodes().size() == 1) {
+                throw new IllegalArgumentException("Cannot remove the last node");
+            }
+            ring = before.without(node);
+            List<B> orphans;
+            try {
+                orphans = items(node);
+            } catch (UncheckedIOException e) {
+                orphans = List.of(); // the node is gone, and its objects with it
+            }
+            for (B item : orphans) {
+                put(ring.nodeFor(item.id()), codec.encode(item));
+            }
+            try {
+                for (B item : orphans) {
+                    remove(node, item.id());
+                }
+            } catch (UncheckedIOException e) {
+                // the node is gone, and its stale copies with it
+            }
+            closeIdle(node);
+            return true;
+        } finally {
+            membership.unlock();
+        }
+    }
+
+    /**
+     * Close the idle connections to the nodes. The nodes and their objects are left as
+     * they are, and the buffer must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (InetSocketAddress node : idle.keySet()) {
+            closeIdle(node);
+        }
+    }
+
+    /**
+     * @return the object with the given id, or null if its node has none
+     */
+    private B getIfPresent(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        byte[] bytes = call(ring.nodeFor(id), Protocol.GET, out -> out.writeUTF(id),
+                in -> in.readBoolean() ? Protocol.readItem(in) : null);
+        return bytes == null ? null : decode(bytes);
+    }
+
+    private boolean put(InetSocketAddress node, byte[] bytes) {
+        return call(node, Protocol.PUT, out -> Protocol.writeItem(out, bytes), DataInputStream::readBoolean);
+    }
+
+    private boolean remove(InetSocketAddress node, String id) {
+        return call(node, Protocol.REMOVE, out -> out.writeUTF(id), DataInputStream::readBoolean);
+    }
+
+    private List<B> items(InetSocketAddress node) {
+        List<byte[]> encoded = call(node, Protocol.ITEMS, out -> { }, in -> {
+            int count = in.readInt();
+            List<byte[]> items = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                items.add(Protocol.readItem(in));
+            }
+            return items;
+        });
+        List<B> items = new ArrayList<>(encoded.size());
+        for (byte[] bytes : encoded) {
+            items.add(decode(bytes));
+        }
+        return items;
+    }
+
+    private B decode(byte[] bytes) {
+        return codec.decode(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+    }
+
+    private B load(Function<? super String, ? extends B> loader, String id) {
+        long start = System.nanoTime();
+        B item = null;
+        try {
+            item = loader.apply(id);
+            return item;
+        } finally {
+            loadTime.add(System.nanoTime() - start);
+            (item != null ? loadSuccesses : loadFailures).increment();
+        }
+    }
+
+    /**
+     * Waits for a load started by another thread.
+     *
+     * @param load the pending result of the load
+     * @return the loaded object
+     */
+    private B await(CompletableFuture<B> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request to a node and reads its response, on an idle connection to the node
+     * if there is one. A request that fails on an idle connection is retried once on a new
+     * connection, since the node may have closed the idle one, unless the request had been
+     * written and is not idempotent: the node may have applied it before the connection
+     * failed, so the failure is thrown instead.
+     *
+     * @param node the node, is not null
+     * @param op the request, one of the requests of {@link Protocol}
+     * @param arguments writes the arguments of the request
+     * @param result reads the result of the request, after its status
+     * @return the result of the request
+     */
+    private <T> T call(InetSocketAddress node, byte op, Arguments arguments, Result<T> result) {
+        if (closed) {
+            throw new IllegalStateException("The buffer is closed");
+        }
+        Queue<Connection> connections = idle.computeIfAbsent(node, k -> new ConcurrentLinkedQueue<>());
+        Connection connection = connections.poll();
+        boolean reused = connection != null;
+        while (true) {
+            boolean written = false;
+            try {
+                if (connection == null) {
+                    connection = new Connection(node);
+                }
+                connection.out.writeByte(op);
+                arguments.write(connection.out);
+                written = true; // from here on, the node may receive the whole request even if flush fails
+                connection.out.flush();
+                byte status = connection.in.readByte();
+                if (status == Protocol.ERROR) {
+                    String message = connection.in.readUTF();
+                    release(connections, connection);
+                    throw new IllegalStateException("Node " + node + " failed: " + message);
+                }
+                if (status != Protocol.OK) {
+                    throw new IOException("Bad status " + status);
+                }
+                T value = result.read(connection.in);
+                release(connections, connection);
+                return value;
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+                if (!reused) {
+                    throw new UncheckedIOException("Node " + node + " is unreachable", e);
+                }
+                if (written && !Protocol.isIdempotent(op)) {
+                    throw new UncheckedIOException("Node " + node + " failed during a request", e);
+                }
+                reused = false;
+            }
+        }
+    }
+
+    private void release(Queue<Connection> connections, Connection connection) {
+        connections.add(connection);
+        if (closed && connections.remove(connection)) { // close() may have missed it
+            connection.close();
+        }
+    }
+
+    private void closeIdle(InetSocketAddress node) {
+        Queue<Connection> connections = idle.get(node);
+        Connection connection;
+        while (connections != null && (connection = connections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Result<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * A connection to a node, used by one thread at a time.
+     */
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress node) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(node, CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
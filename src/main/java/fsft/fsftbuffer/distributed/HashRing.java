@@ -0,0 +1,123 @@
+package fsft.fsftbuffer.distributed;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * An immutable consistent-hash ring that assigns ids to nodes. Each node is placed on the
+ * ring at a number of pseudo-random points, its virtual nodes, and an id belongs to the
+ * node of the first point at or after the hash of the id, wrapping around the ring.
+ *
+ * <p>With enough virtual nodes every node owns close to an equal share of the ids, and
+ * adding or removing a node only moves the ids of the arcs it gains or loses: about
+ * {@code 1 / n} of the ids move when an n-th node joins, all of them to the new node, and
+ * the ids of a leaving node are spread over all the remaining ones instead of falling on
+ * a single neighbour.</p>
+ */
+class HashRing {
+
+    // Abstraction Function:
+    //      AF(r) = the assignment of each id x to r.points.get(k), where k is the smallest
+    //      key of r.points at or after hash(x), or the smallest key if there is none
+
+    // Rep Invariant is
+    //      virtualNodes > 0
+    //      every value of points is in nodes, and every node of nodes is the value of at
+    //      least one key of points
+    //      points.get(hash(virtualNode(n, i))) == n for each node n and i < virtualNodes,
+    //      except where a point of another node took the same hash first
+
+    private final int virtualNodes;
+    private final Set<InetSocketAddress> nodes;
+    private final NavigableMap<Long, InetSocketAddress> points;
+
+    /**
+     * Create an empty ring.
+     *
+     * @param virtualNodes the number of points of each node on the ring, is positive
+     */
+    HashRing(int virtualNodes) {
+        this(virtualNodes, Set.of());
+    }
+
+    private HashRing(int virtualNodes, Set<InetSocketAddress> nodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("The number of virtual nodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableSet(new LinkedHashSet<>(nodes));
+        this.points = new TreeMap<>();
+        for (InetSocketAddress node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(hash(virtualNode(node, i)), node);
+            }
+        }
+    }
+
+    /**
+     * @param node a node, is not null
+     * @return a ring with the nodes of this ring and {@code node}
+     */
+    HashRing with(InetSocketAddress node) {
+        if (node == null) {
+            throw new IllegalArgumentException("Node cannot be null");
+        }
+        Set<InetSocketAddress> joined = new LinkedHashSet<>(nodes);
+        joined.add(node);
+        return new HashRing(virtualNodes, joined);
+    }
+
+    /**
+     * @param node a node, is not null
+     * @return a ring with the nodes of this ring except {@code node}
+     */
+    HashRing without(InetSocketAddress node) {
+        if (node == null) {
+            throw new IllegalArgumentException("Node cannot be null");
+        }
+        Set<InetSocketAddress> left = new LinkedHashSet<>(nodes);
+        left.remove(node);
+        return new HashRing(virtualNodes, left);
+    }
+
+    /**
+     * @return the nodes on the ring, in the order they joined
+     */
+    Set<InetSocketAddress> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @param id an id, is not null
+     * @return the node that owns {@code id}
+     * @throws IllegalStateException if the ring has no nodes
+     */
+    InetSocketAddress nodeFor(String id) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("The ring has no nodes");
+        }
+        Map.Entry<Long, InetSocketAddress> point = points.ceilingEntry(hash(id));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    private static String virtualNode(InetSocketAddress node, int i) {
+        return node.getHostString() + ':' + node.getPort() + '#' + i;
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of the characters of {@code key}, passed through the
+     *         finalizer of MurmurHash3 so that keys differing only in their last characters
+     *         land far apart. It only depends on {@code key}, so every client of the same
+     *         nodes routes the same way, and it is called on every request, so it avoids
+     *         the cost of a cryptographic digest
+     */
+    static long hash(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,89 @@
+package fsft.fsftbuffer.distributed;
+
+import fsft.fsftbuffer.CacheStats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol spoken between a {@link DistributedBuffer} and its
+ * {@link BufferServer}s. A connection carries a sequence of requests, each answered by one
+ * response before the next request is sent. All numbers are big-endian, ids are written
+ * with {@link DataOutputStream#writeUTF(String)}, and items are written as an int length
+ * followed by the bytes of their codec.
+ *
+ * <pre>
+ *   request                       response
+ *   PUT   item                    OK    boolean added
+ *   GET   id                      OK    boolean found, [item]
+ *   TOUCH id                      OK    boolean touched
+ *   ITEMS                         OK    int count, item * count
+ *   STATS                         OK    long * 10, the components of {@link CacheStats}
+ *   REMOVE id                     OK    boolean removed
+ * </pre>
+ *
+ * <p>Any request may instead be answered by {@code ERROR} and a UTF message, after which
+ * the connection stays usable.</p>
+ */
+final class Protocol {
+
+    static final byte PUT = 1;
+    static final byte GET = 2;
+    static final byte TOUCH = 3;
+    static final byte ITEMS = 4;
+    static final byte STATS = 5;
+    static final byte REMOVE = 6;
+
+    static final byte OK = 0;
+    static final byte ERROR = -1;
+
+    /* the largest item a peer accepts, which bounds what a corrupt length can allocate */
+    static final int MAX_ITEM_BYTES = 64 << 20;
+
+    private Protocol() {
+    }
+
+    /**
+     * @param op a request
+     * @return true if a node that receives the request twice ends up as if it had received
+     *         it once, and answers the same both times
+     */
+    static boolean isIdempotent(byte op) {
+        return op == GET || op == ITEMS || op == STATS;
+    }
+
+    static void writeItem(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readItem(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_ITEM_BYTES) {
+            throw new IOException("Bad item length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeStats(DataOutputStream out, CacheStats stats) throws IOException {
+        out.writeLong(stats.hitCount());
+        out.writeLong(stats.missCount());
+        out.writeLong(stats.putCount());
+        out.writeLong(stats.duplicatePutCount());
+        out.writeLong(stats.touchCount());
+        out.writeLong(stats.evictionCount());
+        out.writeLong(stats.expiryCount());
+        out.writeLong(stats.loadSuccessCount());
+        out.writeLong(stats.loadFailureCount());
+        out.writeLong(stats.totalLoadTime());
+    }
+
+    static CacheStats readStats(DataInputStream in) throws IOException {
+        return new CacheStats(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                in.readLong());
+    }
+}
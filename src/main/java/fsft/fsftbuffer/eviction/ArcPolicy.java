@@ -0,0 +1,116 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Items seen once live in a recency list
+ * {@code t1} and items seen more than once in a frequency list {@code t2}. The ids of
+ * items recently evicted from each list are remembered in "ghost" lists {@code b1} and
+ * {@code b2}. A new item whose id is found in a ghost list shows that the corresponding
+ * list was too small, so the target size {@code p} of {@code t1} adapts towards recency
+ * or frequency as the workload changes.
+ */
+public class ArcPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the items of r.t1 and r.t2 (each from least to most recently used), with
+    //      r.b1 and r.b2 the ids evicted from t1 and t2, and r.p the target size of t1
+
+    // Rep Invariant is
+    //      t1, t2, b1, and b2 are pairwise disjoint and do not contain null
+    //      0 <= p <= capacity
+    //      t1.size() + b1.size() <= capacity
+    //      t1.size() + t2.size() + b1.size() + b2.size() <= 2 * capacity
+
+    private final LinkedHashSet<String> t1 = new LinkedHashSet<>();
+    private final LinkedHashSet<String> t2 = new LinkedHashSet<>();
+    private final LinkedHashSet<String> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<String> b2 = new LinkedHashSet<>();
+    private int capacity = 1;
+    private int p = 0;
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        p = Math.min(p, capacity);
+        trimGhosts();
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        if (b1.remove(id)) {
+            p = Math.min(capacity, p + Math.max(1, b2.size() / Math.max(1, b1.size() + 1)));
+            t2.add(id);
+        } else if (b2.remove(id)) {
+            p = Math.max(0, p - Math.max(1, b1.size() / Math.max(1, b2.size() + 1)));
+            t2.add(id);
+        } else {
+            t1.add(id);
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public void recordAccess(String id) {
+        if (!t1.remove(id)) {
+            t2.remove(id);
+        }
+        t2.add(id);
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        if (!t1.remove(id)) {
+            t2.remove(id);
+        }
+    }
+
+    @Override
+    public void recordEviction(String id) {
+        if (t1.remove(id)) {
+            b1.add(id);
+        } else if (t2.remove(id)) {
+            b2.add(id);
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        boolean fromT1 = !t1.isEmpty()
+                && (t2.isEmpty() || t1.size() > p || (b2.contains(candidateId) && t1.size() == p));
+        return (fromT1 ? t1 : t2).iterator().next();
+    }
+
+    /**
+     * Approximated as the items seen once followed by the items seen at least twice, since
+     * the real order depends on the items inserted next.
+     */
+    @Override
+    public List<String> evictionOrder() {
+        List<String> ids = new ArrayList<>(t1);
+        ids.addAll(t2);
+        return ids;
+    }
+
+    /**
+     * Forget the oldest ghosts until the ghost lists fit their bounds.
+     */
+    private void trimGhosts() {
+        while (t1.size() + b1.size() > capacity && !b1.isEmpty()) {
+            removeEldest(b1);
+        }
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty()) {
+            removeEldest(b2);
+        }
+    }
+
+    private static void removeEldest(LinkedHashSet<String> list) {
+        Iterator<String> it = list.iterator();
+        it.next();
+        it.remove();
+    }
+}
@@ -0,0 +1,102 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximates LRU with the CLOCK ("second chance") algorithm. Items sit on a circular
+ * list with a reference bit that is set when they are used. To choose a victim, a hand
+ * sweeps the circle, clearing set bits, and stops at the first item whose bit is clear.
+ * An access only sets a bit, so it is cheaper than moving an item in an LRU list.
+ */
+public class ClockPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the ids on the circular list through r.hand, in sweep order, each with
+    //      the reference bit entry.referenced
+
+    // Rep Invariant is
+    //      entries maps exactly the ids on the circular list to their entries
+    //      hand is null if and only if entries is empty, and is on the list otherwise
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private Entry hand;
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        Entry entry = new Entry(id);
+        if (hand == null) {
+            hand = entry;
+        } else { // insert just behind the hand, so that it is swept last
+            entry.prev = hand.prev;
+            entry.next = hand;
+            hand.prev.next = entry;
+            hand.prev = entry;
+        }
+        entries.put(id, entry);
+    }
+
+    @Override
+    public void recordAccess(String id) {
+        entries.get(id).referenced = true;
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        Entry entry = entries.remove(id);
+        if (entry.next == entry) {
+            hand = null;
+            return;
+        }
+        if (hand == entry) {
+            hand = entry.next;
+        }
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        while (hand.referenced) {
+            hand.referenced = false;
+            hand = hand.next;
+        }
+        return hand.id;
+    }
+
+    /**
+     * The hand sweeps past referenced items once, clearing their bits, so the items
+     * without a reference bit come first, then the others, each in sweep order.
+     */
+    @Override
+    public List<String> evictionOrder() {
+        List<String> unreferenced = new ArrayList<>(entries.size());
+        List<String> referenced = new ArrayList<>();
+        if (hand != null) {
+            Entry entry = hand;
+            do {
+                (entry.referenced ? referenced : unreferenced).add(entry.id);
+                entry = entry.next;
+            } while (entry != hand);
+        }
+        unreferenced.addAll(referenced);
+        return unreferenced;
+    }
+
+    private static class Entry {
+        final String id;
+        boolean referenced = false;
+        Entry prev = this;
+        Entry next = this;
+
+        Entry(String id) {
+            this.id = id;
+        }
+    }
+}
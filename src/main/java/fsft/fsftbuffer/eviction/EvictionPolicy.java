@@ -0,0 +1,78 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.List;
+
+/**
+ * Decides which item a full buffer evicts. A buffer tells its policy about every item it
+ * inserts, every access (a {@code get} hit) and every removal, and asks it for a victim
+ * when it needs room for a new item. Items are identified by their ids.
+ *
+ * <p>Timeouts are handled by the buffer, not by the policy: expired items are removed
+ * before the policy is asked for a victim, and are reported through
+ * {@link #recordRemoval(String)}.</p>
+ *
+ * <p>Policies are not thread-safe; a buffer only calls its policy while holding its lock.
+ * Each buffer needs its own policy instance.</p>
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Tell the policy how many items the buffer can hold. Called before any other method,
+     * and again whenever the capacity of the buffer changes.
+     *
+     * @param capacity the capacity of the buffer, is positive
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * Record that an item was added to the buffer.
+     *
+     * @param id the id of the item, is not currently tracked by the policy
+     */
+    void recordInsert(String id);
+
+    /**
+     * Record that an item in the buffer was used.
+     *
+     * @param id the id of the item, is tracked by the policy
+     */
+    void recordAccess(String id);
+
+    /**
+     * Record that an item left the buffer for a reason other than eviction, such as expiry.
+     *
+     * @param id the id of the item, is tracked by the policy
+     */
+    void recordRemoval(String id);
+
+    /**
+     * Record that the buffer evicted the item returned by {@link #victim(String)}.
+     * Policies that remember evicted items override this method.
+     *
+     * @param id the id of the evicted item, is tracked by the policy
+     */
+    default void recordEviction(String id) {
+        recordRemoval(id);
+    }
+
+    /**
+     * Choose the item to evict to make room for a new item. The buffer may decide not to
+     * evict it after all (for example because an admission filter rejects the new item), so
+     * the victim must remain tracked until {@link #recordEviction(String)} is called.
+     *
+     * @param candidateId the id of the item that needs room, or null if the buffer is shrinking
+     * @return the id of a tracked item
+     * @throws java.util.NoSuchElementException if the policy tracks no items
+     */
+    String victim(String candidateId);
+
+    /**
+     * List the tracked items in the order the policy would evict them if no other item
+     * were inserted or used. Inserting the ids into a new policy in this order gives the
+     * same order for LRU and FIFO, and an approximation of it for policies that also track
+     * frequency or recency history.
+     *
+     * @return the ids of the tracked items, from the next victim to the last
+     */
+    List<String> evictionOrder();
+}
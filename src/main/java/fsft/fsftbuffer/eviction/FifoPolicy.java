@@ -0,0 +1,47 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Evicts the item that was inserted first, regardless of how it was used since.
+ */
+public class FifoPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the ids of r.order, from first to last inserted
+
+    // Rep Invariant is
+    //      order is not null and does not contain null
+
+    private final LinkedHashSet<String> order = new LinkedHashSet<>();
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        order.add(id);
+    }
+
+    @Override
+    public void recordAccess(String id) {
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        order.remove(id);
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        return order.iterator().next();
+    }
+
+    @Override
+    public List<String> evictionOrder() {
+        return new ArrayList<>(order);
+    }
+}
@@ -0,0 +1,103 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evicts the least frequently used item, breaking ties by evicting the item that reached
+ * its frequency first. Items are kept in a list of frequency buckets so that every
+ * operation takes constant time.
+ */
+public class LfuPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the ids in the buckets linked from r.head, where each id has been used
+    //      bucket.frequency times; buckets go from the lowest to the highest frequency
+
+    // Rep Invariant is
+    //      head is a sentinel with frequency 0
+    //      the frequencies of the linked buckets are strictly increasing
+    //      no linked bucket other than head is empty
+    //      bucketOf maps exactly the ids in the buckets to the bucket containing them
+
+    private final Bucket head = new Bucket(0);
+    private final Map<String, Bucket> bucketOf = new HashMap<>();
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        moveTo(id, head, 1);
+    }
+
+    @Override
+    public void recordAccess(String id) {
+        Bucket bucket = bucketOf.get(id);
+        bucket.ids.remove(id);
+        moveTo(id, bucket, bucket.frequency + 1);
+        if (bucket.ids.isEmpty()) {
+            unlink(bucket);
+        }
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        Bucket bucket = bucketOf.remove(id);
+        bucket.ids.remove(id);
+        if (bucket.ids.isEmpty()) {
+            unlink(bucket);
+        }
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        return head.next.ids.iterator().next();
+    }
+
+    @Override
+    public List<String> evictionOrder() {
+        List<String> ids = new ArrayList<>(bucketOf.size());
+        for (Bucket bucket = head.next; bucket != head; bucket = bucket.next) {
+            ids.addAll(bucket.ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Add an id to the bucket with the given frequency that follows {@code previous},
+     * creating the bucket if needed.
+     */
+    private void moveTo(String id, Bucket previous, int frequency) {
+        Bucket bucket = previous.next;
+        if (bucket.frequency != frequency) {
+            bucket = new Bucket(frequency);
+            bucket.prev = previous;
+            bucket.next = previous.next;
+            previous.next.prev = bucket;
+            previous.next = bucket;
+        }
+        bucket.ids.add(id);
+        bucketOf.put(id, bucket);
+    }
+
+    private void unlink(Bucket bucket) {
+        bucket.prev.next = bucket.next;
+        bucket.next.prev = bucket.prev;
+    }
+
+    private static class Bucket {
+        final int frequency;
+        final LinkedHashSet<String> ids = new LinkedHashSet<>();
+        Bucket prev = this;
+        Bucket next = this;
+
+        Bucket(int frequency) {
+            this.frequency = frequency;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Evicts the least recently used item.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the ids of r.order, from least to most recently used
+
+    // Rep Invariant is
+    //      order is not null and does not contain null keys
+
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        order.put(id, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordAccess(String id) {
+        order.get(id); // moves id to the most recently used end
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        order.remove(id);
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        return order.keySet().iterator().next();
+    }
+
+    @Override
+    public List<String> evictionOrder() {
+        return new ArrayList<>(order.keySet());
+    }
+}
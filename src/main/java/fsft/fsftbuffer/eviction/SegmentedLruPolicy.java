@@ -0,0 +1,89 @@
+package fsft.fsftbuffer.eviction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Segmented LRU: new items enter a probationary segment and are promoted to a protected
+ * segment when they are used again. Victims are taken from the probationary segment first,
+ * so items that were only used once cannot push out items that were used repeatedly. When
+ * the protected segment outgrows its share of the capacity, its LRU item is demoted back to
+ * probation.
+ */
+public class SegmentedLruPolicy implements EvictionPolicy {
+
+    // Abstraction Function:
+    //      AF(r) = the ids of r.probation followed by the ids of r.protectedSegment, each
+    //      from least to most recently used
+
+    // Rep Invariant is
+    //      probation and protectedSegment are disjoint and do not contain null
+    //      protectedSegment.size() <= protectedCapacity
+
+    /* the fraction of the capacity reserved for the protected segment */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final LinkedHashSet<String> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<String> protectedSegment = new LinkedHashSet<>();
+    private int protectedCapacity = 1;
+
+    @Override
+    public void setCapacity(int capacity) {
+        protectedCapacity = Math.max(1, (int) (capacity * PROTECTED_SHARE));
+        while (protectedSegment.size() > protectedCapacity) {
+            demote();
+        }
+    }
+
+    @Override
+    public void recordInsert(String id) {
+        probation.add(id);
+    }
+
+    @Override
+    public void recordAccess(String id) {
+        if (probation.remove(id)) {
+            protectedSegment.add(id);
+            if (protectedSegment.size() > protectedCapacity) {
+                demote();
+            }
+        } else {
+            protectedSegment.remove(id);
+            protectedSegment.add(id);
+        }
+    }
+
+    @Override
+    public void recordRemoval(String id) {
+        if (!probation.remove(id)) {
+            protectedSegment.remove(id);
+        }
+    }
+
+    @Override
+    public String victim(String candidateId) {
+        if (!probation.isEmpty()) {
+            return probation.iterator().next();
+        }
+        return protectedSegment.iterator().next();
+    }
+
+    @Override
+    public List<String> evictionOrder() {
+        List<String> ids = new ArrayList<>(probation);
+        ids.addAll(protectedSegment);
+        return ids;
+    }
+
+    /**
+     * Move the LRU item of the protected segment to the MRU end of probation.
+     */
+    private void demote() {
+        Iterator<String> it = protectedSegment.iterator();
+        String id = it.next();
+        it.remove();
+        probation.add(id);
+    }
+}
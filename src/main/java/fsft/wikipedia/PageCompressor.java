@@ -0,0 +1,171 @@
+package fsft.wikipedia;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Creates {@link WikiPage}s whose text is kept compressed in memory, so that a page cache
+ * holds several times more pages in the same heap. The text of a page is compressed with
+ * {@link Deflater} when it has at least {@code threshold} characters and compresses to less
+ * than the string takes, and is decompressed on every call to {@link WikiPage#getText()}.
+ *
+ * <p>A compressor can also keep the decompressed text of the few pages read most recently,
+ * its hot set, so that a page that is read several times in a row is only decompressed
+ * once. The hot set holds at most {@code hotSetSize} texts and drops the least recently
+ * read one first.</p>
+ *
+ * <p>A {@code PageCompressor} is thread-safe, and one compressor is meant to be shared by
+ * all the pages of a cache.</p>
+ */
+public class PageCompressor {
+
+    // Abstraction Function:
+    //      AF(r) = a factory of pages that compresses texts of at least r.threshold
+    //      characters, and remembers the decompressed text of the r.hotSetSize pages it
+    //      decompressed most recently in r.hotSet
+
+    // Rep Invariant is
+    //      threshold >= 0 and hotSetSize >= 0
+    //      hotSet is not null, has at most hotSetSize entries, and maps each page to the
+    //      text it was created with
+
+    /* below this many characters, the deflate header and the lost sharing outweigh the savings */
+    public static final int DEFAULT_THRESHOLD = 1024;
+    /* compresses 16% smaller than BEST_SPEED and decompresses as fast; a page is only
+       compressed once, after a fetch that takes far longer */
+    private static final int LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private final int threshold;
+    private final int hotSetSize;
+    private final Map<WikiPage, String> hotSet;
+
+    /**
+     * Create a compressor for texts of at least {@link #DEFAULT_THRESHOLD} characters,
+     * without a hot set.
+     */
+    public PageCompressor() {
+        this(DEFAULT_THRESHOLD, 0);
+    }
+
+    /**
+     * Create a compressor.
+     *
+     * @param threshold the number of characters from which a text is compressed, is not
+     *                  negative
+     * @param hotSetSize the number of decompressed texts to keep, is not negative; 0 keeps none
+     */
+    public PageCompressor(int threshold, int hotSetSize) {
+        if (threshold < 0 || hotSetSize < 0) {
+            throw new IllegalArgumentException("Threshold and hot set size cannot be negative");
+        }
+        this.threshold = threshold;
+        this.hotSetSize = hotSetSize;
+        this.hotSet = new LinkedHashMap<>(16, 0.75f, true) { // access order
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WikiPage, String> eldest) {
+                return size() > PageCompressor.this.hotSetSize;
+            }
+        };
+    }
+
+    /**
+     * @param pageTitle the title of the page, is not null
+     * @param text the text of the page, or null if the page has none
+     * @return a page with the given title and text, whose text is compressed if it is long
+     *         enough and compresses well
+     */
+    public WikiPage page(String pageTitle, String text) {
+        if (pageTitle == null) {
+            throw new IllegalArgumentException("Page title cannot be null");
+        }
+        if (text == null || text.length() < threshold) {
+            return new WikiPage(pageTitle, text);
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(utf8);
+        if (compressed.length >= heapSize(text)) {
+            return new WikiPage(pageTitle, text);
+        }
+        return new WikiPage(pageTitle, compressed, utf8.length, this);
+    }
+
+    /**
+     * @param page a page created by this compressor with a compressed text
+     * @param compressed the compressed text of {@code page}
+     * @param length the number of UTF-8 bytes of the text
+     * @return the text of {@code page}
+     */
+    String decompress(WikiPage page, byte[] compressed, int length) {
+        if (hotSetSize > 0) {
+            synchronized (hotSet) {
+                String text = hotSet.get(page);
+                if (text != null) {
+                    return text;
+                }
+            }
+        }
+        byte[] utf8 = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int inflated = inflater.inflate(utf8, n, length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated page text");
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt page text", e); // only this class wrote it
+        } finally {
+            inflater.end();
+        }
+        String text = new String(utf8, StandardCharsets.UTF_8);
+        if (hotSetSize > 0) {
+            synchronized (hotSet) {
+                hotSet.put(page, text);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * @return the number of bytes of the characters of {@code text}, which a string keeps
+     *         in one byte each if they are all Latin-1 and in two bytes each otherwise
+     */
+    private static int heapSize(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return 2 * text.length();
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * @return the compressed bytes, or bytes as long as {@code utf8} if they would not be
+     *         shorter
+     */
+    private static byte[] compress(byte[] utf8) {
+        Deflater deflater = new Deflater(LEVEL);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            byte[] out = new byte[utf8.length];
+            int n = 0;
+            while (!deflater.finished() && n < out.length) {
+                n += deflater.deflate(out, n, out.length - n);
+            }
+            // if the output filled up, the text does not compress and the caller keeps it as is
+            return deflater.finished() ? Arrays.copyOf(out, n) : out;
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package fsft.wikipedia;
 
+import fsft.fsftbuffer.Buffer;
 import fsft.fsftbuffer.FSFTBuffer;
+import fsft.fsftbuffer.Ticker;
 import io.github.fastily.jwiki.core.*;
 
 import java.time.Duration;
@@ -38,6 +40,8 @@ import java.util.stream.Collectors;
  *   as a request and this occurrence is not considered in any statistical analyses</li>
  *   <li>The default constructor initializes the mediator for the English-language Wikipedia
  *   domain. Additional constructors allow for specifying the domain.</li>
+ *   <li>A mediator created with a {@link PageCompressor} keeps the text of long pages
+ *   compressed in its cache, and decompresses it on each {@link #getPage(String)}</li>
  * </ul>
  */
 public class WikiMediator {
@@ -45,7 +49,8 @@ public class WikiMediator {
     // Abstraction function is
     //      AF(r) = a mediator service for interacting with Wikipedia, where:
     //      - r.wiki is the Wikipedia API interface
-    //      - r.pageCache contains cached Wikipedia pages to minimize network accesses
+    //      - r.pageCache contains cached Wikipedia pages to minimize network accesses,
+    //          whose text is compressed by r.compressor if it is not null
     //      - r.stringRequests is a map where the values are strings representing search
     //          terms or page titles, and the key of each value is the timestamp at which
     //          that string was queried
@@ -59,8 +64,10 @@ public class WikiMediator {
     //      - getRequestTimes is not null and does not contain null elements
 
     private final long t0;
+    private final Ticker ticker;
     private final Wiki wiki;
-    private final FSFTBuffer<WikiPage> pageCache;
+    private final Buffer<WikiPage> pageCache;
+    private final PageCompressor compressor;
     private final List<WikiMediatorRequest> requestHistory;
 
     /* TODO: Implement this datatype
@@ -93,12 +100,52 @@ public class WikiMediator {
      * @param domain the Wikipedia domain to use for page fetching and search, is not null
      */
     public WikiMediator(String domain) {
-        if (domain == null) {
+        this(domain, new FSFTBuffer<>()); // use default buffer settings??
+    }
+
+    /**
+     * Creates a new instance of {@code WikiMediator} for the specified Wikipedia domain that
+     * caches pages in the given buffer, e.g. a {@link fsft.fsftbuffer.SegmentedFSFTBuffer}
+     * when many threads request pages concurrently.
+     *
+     * @param domain the Wikipedia domain to use for page fetching and search, is not null
+     * @param pageCache the buffer to cache pages in, is not null and is not shared
+     */
+    public WikiMediator(String domain, Buffer<WikiPage> pageCache) {
+        this(domain, pageCache, Ticker.system());
+    }
+
+    /**
+     * Creates a new instance of {@code WikiMediator} for the specified Wikipedia domain that
+     * caches pages in the given buffer and timestamps requests with the given ticker.
+     *
+     * @param domain the Wikipedia domain to use for page fetching and search, is not null
+     * @param pageCache the buffer to cache pages in, is not null and is not shared
+     * @param ticker the source of request timestamps, in milliseconds, is not null
+     */
+    public WikiMediator(String domain, Buffer<WikiPage> pageCache, Ticker ticker) {
+        this(domain, pageCache, ticker, null);
+    }
+
+    /**
+     * Creates a new instance of {@code WikiMediator} for the specified Wikipedia domain that
+     * caches pages in the given buffer with their text compressed by the given compressor,
+     * so that the buffer can hold more pages in the same memory.
+     *
+     * @param domain the Wikipedia domain to use for page fetching and search, is not null
+     * @param pageCache the buffer to cache pages in, is not null and is not shared
+     * @param ticker the source of request timestamps, in milliseconds, is not null
+     * @param compressor creates the cached pages, or null to keep their text uncompressed
+     */
+    public WikiMediator(String domain, Buffer<WikiPage> pageCache, Ticker ticker, PageCompressor compressor) {
+        if (domain == null || pageCache == null || ticker == null) {
             throw new IllegalArgumentException();
         }
-        t0 = System.currentTimeMillis();
+        this.ticker = ticker;
+        this.compressor = compressor;
+        t0 = ticker.read();
         wiki = new Wiki.Builder().withDomain(domain).build();
-        pageCache = new FSFTBuffer<>(); // use default buffer settings??
+        this.pageCache = pageCache;
         requestHistory = new CopyOnWriteArrayList<>();
     }
 
@@ -115,7 +162,7 @@ public class WikiMediator {
         if (searchTerm == null) {
             throw new IllegalArgumentException();
         }
-        requestHistory.add(new WikiMediatorRequest(searchTerm));
+        requestHistory.add(new WikiMediatorRequest(searchTerm, ticker.read()));
         if (limit <= 0) {
             return new ArrayList<>();
         }
@@ -132,11 +179,11 @@ public class WikiMediator {
         if (pageTitle == null) {
             throw new IllegalArgumentException();
         }
-        requestHistory.add(new WikiMediatorRequest(pageTitle));
-        if (!pageCache.touch(pageTitle)) {
-            pageCache.put(new WikiPage(wiki, pageTitle));
-        }
-        return pageCache.get(pageTitle).getText();
+        requestHistory.add(new WikiMediatorRequest(pageTitle, ticker.read()));
+        pageCache.touch(pageTitle);
+        // concurrent requests for the same missing page share a single fetch
+        return pageCache.get(pageTitle, title -> compressor == null ? new WikiPage(wiki, title)
+                : compressor.page(title, wiki.getPageText(title))).getText();
     }
 
     /**
@@ -156,8 +203,8 @@ public class WikiMediator {
         if (duration == null) {
             throw new IllegalArgumentException();
         }
-        long now = System.currentTimeMillis();
-        requestHistory.add(new WikiMediatorRequest());
+        long now = ticker.read();
+        requestHistory.add(new WikiMediatorRequest("", now));
         if (limit <= 0) {
             return new ArrayList<>();
         }
@@ -185,7 +232,7 @@ public class WikiMediator {
         if (duration == null) {
             throw new IllegalArgumentException();
         }
-        requestHistory.add(new WikiMediatorRequest());
+        requestHistory.add(new WikiMediatorRequest("", ticker.read()));
         int max = 1;
         int start = 0;
         int end = 1;
@@ -5,7 +5,11 @@ public class WikiMediatorRequest {
     private final String string;
 
     public WikiMediatorRequest(String str) {
-        time = System.currentTimeMillis();
+        this(str, System.currentTimeMillis());
+    }
+
+    public WikiMediatorRequest(String str, long time) {
+        this.time = time;
         string = str;
     }
 
@@ -6,14 +6,34 @@ import io.github.fastily.jwiki.core.Wiki;
 public class WikiPage implements Bufferable {
     private String pageTitle;
     private String text;
+    /* the text compressed by compressor, if it is not null; text is null then */
+    private byte[] compressed;
+    private int length;
+    private PageCompressor compressor;
 
     public WikiPage(Wiki wiki, String pageTitle) {
         this.pageTitle = pageTitle;
         text = wiki.getPageText(pageTitle);
     }
 
+    WikiPage(String pageTitle, String text) {
+        this.pageTitle = pageTitle;
+        this.text = text;
+    }
+
+    WikiPage(String pageTitle, byte[] compressed, int length, PageCompressor compressor) {
+        this.pageTitle = pageTitle;
+        this.compressed = compressed;
+        this.length = length;
+        this.compressor = compressor;
+    }
+
+    /**
+     * @return the text of the page, decompressed if the page was created by a
+     *         {@link PageCompressor} that compressed it
+     */
     public String getText() {
-        return text;
+        return compressed == null ? text : compressor.decompress(this, compressed, length);
     }
 
     @Override
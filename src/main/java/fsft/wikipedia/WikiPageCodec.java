@@ -0,0 +1,32 @@
+package fsft.wikipedia;
+
+import fsft.fsftbuffer.BufferableCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes a {@link WikiPage} as the UTF-8 bytes of its title, prefixed by their length,
+ * followed by the UTF-8 bytes of its text, where a null text is stored as an empty one.
+ * Lets a page cache keep its pages off the heap, for example with
+ * {@code new FSFTBuffer.Builder<WikiPage>().withOffHeapValues(new WikiPageCodec())}.
+ */
+public class WikiPageCodec implements BufferableCodec<WikiPage> {
+
+    @Override
+    public byte[] encode(WikiPage page) {
+        byte[] title = page.id().getBytes(StandardCharsets.UTF_8);
+        byte[] text = page.getText() == null ? new byte[0] : page.getText().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + title.length + text.length)
+                .putInt(title.length).put(title).put(text).array();
+    }
+
+    @Override
+    public WikiPage decode(ByteBuffer bytes) {
+        byte[] title = new byte[bytes.getInt()];
+        bytes.get(title);
+        byte[] text = new byte[bytes.remaining()];
+        bytes.get(text);
+        return new WikiPage(new String(title, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8));
+    }
+}
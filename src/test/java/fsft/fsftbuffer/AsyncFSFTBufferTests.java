@@ -0,0 +1,114 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncFSFTBufferTests {
+
+    /* runs the loads only when the test says so */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor = tasks::add;
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, future::get).getCause();
+    }
+
+    @Test
+    public void test_PendingLoadIsShared() throws Exception {
+        AsyncFSFTBuffer<SimpleBufferableItem> buff = new AsyncFSFTBuffer<>(new FSFTBuffer<>(10, Duration.ofSeconds(10)), executor);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<SimpleBufferableItem> first = buff.get("item 1", id -> {
+            calls.incrementAndGet();
+            return new SimpleBufferableItem(id);
+        });
+        CompletableFuture<SimpleBufferableItem> second = buff.get("item 1", id -> {
+            calls.incrementAndGet();
+            return new SimpleBufferableItem(id);
+        });
+        CompletableFuture<SimpleBufferableItem> lookup = buff.get("item 1");
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertFalse(lookup.isDone()); // the pending load, not a miss
+        assertFalse(buff.touch("item 1"));
+
+        lookup.cancel(false); // cancelling a copy leaves the load running
+        runTasks();
+        assertEquals(1, calls.get());
+        assertEquals("item 1", first.get().id());
+        assertEquals("item 1", second.get().id());
+        assertTrue(buff.get("item 1").isDone());
+        assertEquals("item 1", buff.synchronous().currentItems().iterator().next().id());
+        assertEquals(1, buff.synchronous().stats().loadSuccessCount());
+        assertEquals(NoSuchElementException.class, cause(buff.get("item 2")).getClass());
+    }
+
+    @Test
+    public void test_SynchronousGetJoinsAsyncLoad() throws Exception {
+        AsyncFSFTBuffer<SimpleBufferableItem> buff = new AsyncFSFTBuffer<>(new FSFTBuffer<>(10, Duration.ofSeconds(10)), executor);
+        CompletableFuture<SimpleBufferableItem> source = new CompletableFuture<>();
+        CompletableFuture<SimpleBufferableItem> async = buff.get("item 1", (id, executor) -> source);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<SimpleBufferableItem> sync = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> sync.complete(buff.synchronous().get("item 1", id -> {
+            calls.incrementAndGet();
+            return new SimpleBufferableItem(id);
+        })));
+        waiter.start();
+        source.complete(new SimpleBufferableItem("item 1"));
+        waiter.join();
+        assertEquals("item 1", async.get().id());
+        assertEquals("item 1", sync.get().id());
+        assertEquals(0, calls.get());
+
+        CompletableFuture<SimpleBufferableItem> pending = new CompletableFuture<>();
+        CompletableFuture<SimpleBufferableItem> put = buff.put("item 2", pending);
+        assertFalse(buff.get("item 2").isDone());
+        pending.complete(new SimpleBufferableItem("item 2"));
+        assertEquals("item 2", put.get().id());
+        assertTrue(buff.put(new SimpleBufferableItem("item 3")).get());
+        assertFalse(buff.put(new SimpleBufferableItem("item 3")).get());
+    }
+
+    @Test
+    public void test_LoadFailures() throws Exception {
+        AsyncFSFTBuffer<SimpleBufferableItem> buff = new AsyncFSFTBuffer<>(new FSFTBuffer<>(10, Duration.ofSeconds(10)), executor);
+        CompletableFuture<SimpleBufferableItem> thrown = buff.get("item 1", id -> {
+            throw new IllegalStateException("source is down");
+        });
+        CompletableFuture<SimpleBufferableItem> missing = buff.get("item 2", id -> null);
+        CompletableFuture<SimpleBufferableItem> other = buff.get("item 3", id -> new SimpleBufferableItem("item 4"));
+        runTasks();
+        assertEquals(IllegalStateException.class, cause(thrown).getClass());
+        assertEquals(NoSuchElementException.class, cause(missing).getClass());
+        assertEquals(IllegalArgumentException.class, cause(other).getClass());
+        assertEquals(3, buff.synchronous().stats().loadFailureCount());
+        assertTrue(buff.synchronous().currentItems().isEmpty());
+
+        // nothing was added, so the next call loads again
+        CompletableFuture<SimpleBufferableItem> retry = buff.get("item 1", SimpleBufferableItem::new);
+        runTasks();
+        assertEquals("item 1", retry.get().id());
+
+        assertThrows(IllegalArgumentException.class, () -> new AsyncFSFTBuffer<>(null));
+        assertThrows(IllegalArgumentException.class, () -> buff.get(null));
+        assertThrows(IllegalArgumentException.class, () -> buff.get("item 1", (Function<String, SimpleBufferableItem>) null));
+    }
+}
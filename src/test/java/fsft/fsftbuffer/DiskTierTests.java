@@ -0,0 +1,76 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskTierTests {
+
+    /* encodes an item as its id followed by padding, so that records have a known size */
+    static final BufferableCodec<SimpleBufferableItem> CODEC = new BufferableCodec<>() {
+        @Override
+        public byte[] encode(SimpleBufferableItem item) {
+            byte[] id = item.id().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(Integer.BYTES + id.length + 100).putInt(id.length).put(id).array();
+        }
+
+        @Override
+        public SimpleBufferableItem decode(ByteBuffer bytes) {
+            byte[] id = new byte[bytes.getInt()];
+            bytes.get(id);
+            return new SimpleBufferableItem(new String(id, StandardCharsets.UTF_8));
+        }
+    };
+
+    @Test
+    public void test_GetLeavesTheItem(@TempDir Path directory) {
+        DiskTier<SimpleBufferableItem> tier = new DiskTier<>(directory, CODEC, 8192, Duration.ofSeconds(10), 4096);
+        tier.put(new SimpleBufferableItem("item 1"), 0);
+        tier.put(new SimpleBufferableItem("item 2"), 0);
+        assertEquals(new SimpleBufferableItem("item 1"), tier.get("item 1", 0));
+        assertEquals(new SimpleBufferableItem("item 1"), tier.get("item 1", 0));
+        tier.remove("item 1", 0);
+        assertNull(tier.get("item 1", 0));
+        assertNull(tier.get("item 2", 10_001)); // expired
+        assertEquals(1, tier.size()); // until its segment is compacted or dropped
+    }
+
+    @Test
+    public void test_OldestSegmentIsDroppedAtTheCap(@TempDir Path directory) throws Exception {
+        DiskTier<SimpleBufferableItem> tier = new DiskTier<>(directory, CODEC, 3 * 4096, Duration.ofSeconds(10), 4096);
+        for (int i = 0; i < 200; i++) {
+            tier.put(new SimpleBufferableItem("item " + i), 0);
+            assertTrue(tier.segmentCount() <= 3);
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(tier.segmentCount(), files.count());
+        }
+        assertNull(tier.get("item 0", 0));
+        assertEquals(new SimpleBufferableItem("item 199"), tier.get("item 199", 0));
+        assertTrue(tier.size() > 40); // at least two full segments of ~140-byte records
+    }
+
+    @Test
+    public void test_MostlyRemovedSegmentsAreCompacted(@TempDir Path directory) {
+        DiskTier<SimpleBufferableItem> tier = new DiskTier<>(directory, CODEC, 4 * 4096, Duration.ofSeconds(10), 4096);
+        for (int i = 0; i < 60; i++) {
+            tier.put(new SimpleBufferableItem("item " + i), 0);
+        }
+        int segments = tier.segmentCount();
+        for (int i = 0; i < 60; i += 3) {
+            tier.remove("item " + i, 0);
+            tier.remove("item " + (i + 1), 0);
+        }
+        assertTrue(tier.segmentCount() < segments);
+        for (int i = 2; i < 60; i += 3) {
+            assertEquals(new SimpleBufferableItem("item " + i), tier.get("item " + i, 0));
+        }
+    }
+}
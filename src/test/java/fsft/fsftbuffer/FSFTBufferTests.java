@@ -2,11 +2,22 @@ package fsft.fsftbuffer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.opentest4j.AssertionFailedError;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -51,6 +62,736 @@ public class FSFTBufferTests {
         assertFalse(buff.touch("item 3")); // item 3 should be gone
     }
 
+    @Test
+    public void test_LRUOrderFollowsGets() {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer<>(100, Duration.ofSeconds(10));
+        for (int i = 0; i < 100; i++) {
+            buff.put(new SimpleBufferableItem("item " + i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            buff.get("item " + i); // even items become more recently used than odd items
+        }
+        for (int i = 100; i < 150; i++) {
+            buff.put(new SimpleBufferableItem("item " + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0, buff.touch("item " + i));
+        }
+    }
+
+    @Test
+    public void test_FullBufferRemovesAllExpired() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(50).withTimeout(Duration.ofMillis(200)).withTicker(time::get).build();
+        for (int i = 0; i < 50; i++) {
+            buff.put(new SimpleBufferableItem("item " + i));
+        }
+        time.set(201);
+        assertTrue(buff.put(b1));
+        assertEquals(Set.of(b1), buff.currentItems());
+    }
+
+    @Test
+    public void test_LockFreeReads_RemoveLRUWhenFull() {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofSeconds(1)).withLockFreeReads().build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.put(b3);
+        buff.get("item 1");
+        buff.put(b4); // reads are applied before evicting, so item 2 is the LRU item
+        assertFalse(buff.touch("item 2"));
+        assertEquals(Set.of(b1, b3, b4), buff.currentItems());
+    }
+
+    @Test
+    public void test_LockFreeReads_Multithreading() throws InterruptedException {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(50).withTimeout(Duration.ofSeconds(10)).withLockFreeReads().build();
+        for (int i = 49; i >= 0; i--) {
+            buff.put(new SimpleBufferableItem("item " + i)); // hot items 0 to 4 are the most recently used
+        }
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int threadNumber = i;
+            Thread t = new Thread(() -> {
+                Random rand = new Random(threadNumber);
+                for (int j = 0; j < 5000; j++) {
+                    try {
+                        if (threadNumber == 0 && j % 10 == 0) {
+                            buff.put(new SimpleBufferableItem("new " + j));
+                        } else {
+                            buff.get("item " + rand.nextInt(5)); // hot items are never evicted
+                        }
+                    } catch (NoSuchElementException e) {
+                        failed.set(true);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(failed.get());
+        assertEquals(50, buff.currentItems().size());
+    }
+
+    @Test
+    public void test_Listener() {
+        AtomicLong time = new AtomicLong(0);
+        List<String> events = new ArrayList<>();
+        BufferListener<SimpleBufferableItem> listener = new BufferListener<>() {
+            public void onPut(SimpleBufferableItem item) { events.add("put " + item.id()); }
+            public void onHit(SimpleBufferableItem item) { events.add("hit " + item.id()); }
+            public void onMiss(String id) { events.add("miss " + id); }
+            public void onTouch(SimpleBufferableItem item) { events.add("touch " + item.id()); }
+            public void onEvict(SimpleBufferableItem item) { events.add("evict " + item.id()); }
+            public void onExpire(SimpleBufferableItem item) { events.add("expire " + item.id()); }
+        };
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(2).withTimeout(Duration.ofMillis(200)).withTicker(time::get)
+                .withListener(listener, Runnable::run).build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.get("item 1");
+        buff.put(b3); // evicts item 2
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 2"));
+        buff.touch("item 3");
+        time.set(201);
+        buff.currentItems();
+        assertEquals(List.of("put item 1", "put item 2", "hit item 1", "evict item 2", "put item 3",
+                "miss item 2", "touch item 3"), events.subList(0, 7));
+        assertEquals(Set.of("expire item 1", "expire item 3"), new HashSet<>(events.subList(7, 9)));
+    }
+
+    @Test
+    public void test_TinyLfuAdmission_ImprovesZipfHitRate() {
+        int[] trace = zipfTrace(10_000, 0.9, 200_000, 42);
+        FSFTBuffer<SimpleBufferableItem> lru = new FSFTBuffer<>(500, Duration.ofHours(1));
+        FSFTBuffer<SimpleBufferableItem> tinyLfu = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(500).withTimeout(Duration.ofHours(1)).withTinyLfuAdmission().build();
+        assertTrue(hitRate(tinyLfu, trace) > hitRate(lru, trace) + 0.03);
+    }
+
+    @Test
+    public void test_TinyLfuAdmission_RejectsOneOffItem() {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofSeconds(10)).withTinyLfuAdmission().build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.put(b3);
+        for (int i = 0; i < 3; i++) {
+            buff.get("item 1");
+            buff.get("item 2");
+            buff.get("item 3");
+        }
+        assertFalse(buff.put(b4)); // requested once, less often than the LRU item
+        assertEquals(Set.of(b1, b2, b3), buff.currentItems());
+        for (int i = 0; i < 4; i++) {
+            buff.put(b4);
+        }
+        assertTrue(buff.currentItems().contains(b4)); // eventually popular enough to be admitted
+    }
+
+    /**
+     * @return a trace of ids in [0, n) drawn from a Zipf distribution with exponent s
+     */
+    private static int[] zipfTrace(int n, double s, int length, long seed) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        Random rand = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int k = Arrays.binarySearch(cdf, rand.nextDouble() * sum);
+            trace[i] = k < 0 ? -k - 1 : k;
+        }
+        return trace;
+    }
+
+    /**
+     * Replays a trace, putting every missed id into the buffer.
+     *
+     * @return the fraction of requests that hit the buffer
+     */
+    private static double hitRate(FSFTBuffer<SimpleBufferableItem> buff, int[] trace) {
+        int hits = 0;
+        for (int k : trace) {
+            try {
+                buff.get("item " + k);
+                hits++;
+            } catch (NoSuchElementException e) {
+                buff.put(new SimpleBufferableItem("item " + k));
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    @Test
+    public void test_Weigher() {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(20).withTimeout(Duration.ofSeconds(10))
+                .withWeigher(item -> item.id().length()).build();
+        SimpleBufferableItem small = new SimpleBufferableItem("s");
+        SimpleBufferableItem medium = new SimpleBufferableItem("mmmmmmmm");
+        SimpleBufferableItem other = new SimpleBufferableItem("ooooooo");
+        SimpleBufferableItem large = new SimpleBufferableItem("llllllllllll");
+        SimpleBufferableItem huge = new SimpleBufferableItem("hhhhhhhhhhhhhhhhhhhhh");
+        assertTrue(buff.put(small));
+        assertTrue(buff.put(medium));
+        assertTrue(buff.put(other)); // total weight 16
+        assertFalse(buff.put(huge)); // heavier than the whole buffer
+        assertTrue(buff.put(large)); // evicts the two LRU items to fit
+        assertEquals(Set.of(other, large), buff.currentItems());
+    }
+
+    @Test
+    public void test_LoaderSharesConcurrentMisses() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<SimpleBufferableItem> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    results.add(buff.get("item 1", id -> {
+                        loads.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return b1;
+                    }));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(50, results.size());
+        assertTrue(results.stream().allMatch(item -> item == b1));
+        assertEquals(b1, buff.get("item 1"));
+    }
+
+    @Test
+    public void test_LoaderExceptionIsNotCached() throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        AtomicReference<Throwable> waiterFailure = new AtomicReference<>();
+        Thread loaderThread = new Thread(() -> assertThrows(IllegalStateException.class,
+                () -> buff.get("item 1", id -> {
+                    loading.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    throw new IllegalStateException("upstream unavailable");
+                })));
+        loaderThread.start();
+        loading.await();
+        Thread waiter = new Thread(() -> {
+            try {
+                buff.get("item 1", id -> b1);
+            } catch (Throwable e) {
+                waiterFailure.set(e);
+            }
+        });
+        waiter.start();
+        loaderThread.join();
+        waiter.join();
+        assertTrue(waiterFailure.get() instanceof IllegalStateException); // shared the failed load
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 1"));
+        assertEquals(b1, buff.get("item 1", id -> b1)); // the failure was not cached
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 2", id -> null));
+    }
+
+    @Test
+    public void test_RefreshAhead() {
+        AtomicLong time = new AtomicLong(0);
+        SimpleBufferableItem reloaded = new SimpleBufferableItem("item 1");
+        AtomicInteger reloads = new AtomicInteger();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(400)).withTicker(time::get)
+                .withRefreshAhead(0.5, id -> {
+                    reloads.incrementAndGet();
+                    return reloaded;
+                }, Runnable::run).build();
+        buff.put(b1);
+        assertSame(b1, buff.get("item 1")); // too early to refresh
+        assertEquals(0, reloads.get());
+        time.set(250);
+        assertSame(b1, buff.get("item 1")); // the current item is returned, and reloaded
+        assertEquals(1, reloads.get());
+        time.set(500); // past the original timeout
+        assertSame(reloaded, buff.get("item 1"));
+    }
+
+    @Test
+    public void test_RefreshAheadFollowsPerItemLifetimes() {
+        AtomicLong time = new AtomicLong(0);
+        List<String> reloads = new ArrayList<>();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofHours(1)).withTicker(time::get)
+                .withRefreshAhead(0.5, id -> {
+                    reloads.add(id);
+                    return null; // keeps the current item, and its lifetime
+                }, Runnable::run).build();
+        buff.put(b1, Duration.ofSeconds(1));
+        buff.put(b2, Duration.ofDays(1));
+        buff.put(b3);
+        time.set(100);
+        buff.getAll(List.of("item 1", "item 2", "item 3"));
+        assertEquals(List.of(), reloads); // a short lifetime is not inside the margin of the timeout
+        time.set(600);
+        buff.getAll(List.of("item 1", "item 2", "item 3"));
+        assertEquals(List.of("item 1"), reloads);
+        time.set(Duration.ofMinutes(31).toMillis());
+        buff.getAll(List.of("item 2", "item 3"));
+        assertEquals(List.of("item 1", "item 3"), reloads);
+        time.set(Duration.ofHours(13).toMillis()); // past half a day, long before its last hour
+        buff.get("item 2");
+        assertEquals(List.of("item 1", "item 3", "item 2"), reloads);
+    }
+
+    @Test
+    public void test_RefreshIsNotJoinedByLoads() throws Exception {
+        AtomicLong time = new AtomicLong(0);
+        Queue<Runnable> reloads = new ArrayDeque<>();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get)
+                .withRefreshAhead(0.5, id -> null, reloads::add).build();
+        buff.put(b1);
+        time.set(600);
+        assertSame(b1, buff.get("item 1")); // starts a reload that will return nothing
+        assertEquals(1, reloads.size());
+        time.set(1001);
+        SimpleBufferableItem loaded = new SimpleBufferableItem("item 1");
+        // a miss loads on its own instead of waiting for the pending reload
+        assertSame(loaded, buff.getAsync("item 1", (id, executor) -> CompletableFuture.completedFuture(loaded),
+                Runnable::run).getNow(null));
+        reloads.poll().run();
+        assertSame(loaded, buff.get("item 1"));
+    }
+
+    @Test
+    public void test_RefreshAheadReplacesWithinCapacity() {
+        AtomicLong time = new AtomicLong(0);
+        Map<SimpleBufferableItem, Integer> weights = new IdentityHashMap<>();
+        AtomicReference<SimpleBufferableItem> reload = new AtomicReference<>();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(10).withTimeout(Duration.ofMillis(1000)).withTicker(time::get)
+                .withWeigher(item -> weights.getOrDefault(item, 1))
+                .withRefreshAhead(0.5, id -> reload.get(), Runnable::run).build();
+        buff.putAll(List.of(b1, b2, b3));
+
+        SimpleBufferableItem tooHeavy = new SimpleBufferableItem("item 1");
+        weights.put(tooHeavy, 11);
+        reload.set(tooHeavy);
+        time.set(600);
+        assertSame(b1, buff.get("item 1")); // the reload does not fit, so item 1 is kept
+        assertEquals(Set.of("item 1", "item 2", "item 3"), ids(buff.currentItems()));
+
+        SimpleBufferableItem negative = new SimpleBufferableItem("item 1");
+        weights.put(negative, -5);
+        reload.set(negative);
+        assertSame(b1, buff.get("item 1")); // rejected like a put
+        assertEquals(3, buff.currentItems().size());
+
+        SimpleBufferableItem heavy = new SimpleBufferableItem("item 1");
+        weights.put(heavy, 9);
+        reload.set(heavy);
+        assertSame(b1, buff.get("item 1"));
+        time.set(1200); // past the original timeout
+        assertSame(heavy, buff.get("item 1")); // replaced, evicting items 2 and 3 to fit
+        assertEquals(Set.of("item 1"), ids(buff.currentItems()));
+    }
+
+    @Test
+    public void test_BulkOperations() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        assertEquals(3, buff.putAll(List.of(b1, b2, b3)));
+        assertEquals(0, buff.putAll(List.of(b1, b2))); // already in the buffer
+        time.set(600);
+        assertEquals(2, buff.touchAll(List.of("item 1", "item 2", "item 4")));
+        time.set(1200); // item 3 has expired
+        Map<String, SimpleBufferableItem> hits = buff.getAll(List.of("item 1", "item 2", "item 3"));
+        assertEquals(Map.of("item 1", b1, "item 2", b2), hits);
+        assertEquals(2, buff.putAll(List.of(b3, b4))); // item 1 is evicted to make room for item 4
+        assertEquals(Set.of(b2, b3, b4), buff.currentItems());
+        assertThrows(IllegalArgumentException.class, () -> buff.putAll(Arrays.asList(b1, null)));
+        assertThrows(IllegalArgumentException.class, () -> buff.getAll(null));
+    }
+
+    @Test
+    public void test_OffHeapValues() {
+        AtomicLong time = new AtomicLong(0);
+        BufferableCodec<SimpleBufferableItem> codec = new BufferableCodec<>() {
+            @Override
+            public byte[] encode(SimpleBufferableItem item) {
+                return item.id().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public SimpleBufferableItem decode(ByteBuffer bytes) {
+                return new SimpleBufferableItem(StandardCharsets.UTF_8.decode(bytes).toString());
+            }
+        };
+        List<String> evicted = new ArrayList<>();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(500)).withTicker(time::get).withOffHeapValues(codec)
+                .withListener(new BufferListener<>() {
+                    @Override
+                    public void onEvict(SimpleBufferableItem item) {
+                        evicted.add(item.id());
+                    }
+                }, Runnable::run).build();
+        assertTrue(buff.put(b1));
+        assertTrue(buff.put(b2));
+        assertTrue(buff.put(b3));
+        SimpleBufferableItem copy = buff.get("item 1");
+        assertEquals(b1, copy);
+        assertNotSame(b1, copy); // decoded from off-heap memory
+        assertTrue(buff.put(b4));
+        assertEquals(List.of("item 2"), evicted);
+        assertEquals(Map.of("item 3", b3, "item 4", b4), buff.getAll(List.of("item 2", "item 3", "item 4")));
+        time.set(501);
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 1"));
+        assertTrue(buff.currentItems().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withOffHeapValues(codec).withLockFreeReads().build());
+    }
+
+    @Test
+    public void test_DiskTier(@TempDir Path directory) {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withDiskTier(directory, DiskTierTests.CODEC, 1 << 16, Duration.ofSeconds(10), Runnable::run)
+                .build();
+        assertEquals(4, buff.putAll(List.of(b1, b2, b3, b4))); // item 1 is evicted to disk
+        assertFalse(buff.currentItems().contains(b1));
+        assertEquals(b1, buff.get("item 1")); // found on disk, and item 2 is evicted to disk
+        assertEquals(Set.of("item 1", "item 3", "item 4"), ids(buff.currentItems()));
+        assertEquals(Map.of("item 2", b2), buff.getAll(List.of("item 2", "item 5")));
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 5"));
+        assertTrue(buff.remove("item 2"));
+        assertFalse(buff.remove("item 2"));
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 2")); // nor on disk
+    }
+
+    @Test
+    public void test_DiskTierWritesRunOnItsExecutor(@TempDir Path directory) {
+        Queue<Runnable> writes = new ArrayDeque<>();
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(1).withDiskTier(directory, DiskTierTests.CODEC, 1 << 16, Duration.ofSeconds(10), writes::add)
+                .build();
+        buff.put(b1);
+        buff.put(b2); // evicts item 1, and leaves writing it to the executor
+        buff.put(b3);
+        assertEquals(1, writes.size()); // one task applies every pending write
+        assertEquals(b1, buff.get("item 1")); // found among the pending writes
+        writes.poll().run();
+        assertEquals(b2, buff.get("item 2"));
+        assertEquals(1, writes.size());
+        writes.poll().run();
+        assertEquals(b1, buff.get("item 1")); // item 2 evicted it to disk again
+    }
+
+    @Test
+    public void test_DiskHitIsAHitAndNotAPut(@TempDir Path directory) {
+        List<String> events = new ArrayList<>();
+        BufferListener<SimpleBufferableItem> listener = new BufferListener<>() {
+            public void onPut(SimpleBufferableItem item) { events.add("put " + item.id()); }
+            public void onHit(SimpleBufferableItem item) { events.add("hit " + item.id()); }
+            public void onMiss(String id) { events.add("miss " + id); }
+        };
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(1).withListener(listener, Runnable::run)
+                .withDiskTier(directory, DiskTierTests.CODEC, 1 << 16, Duration.ofSeconds(10), Runnable::run)
+                .build();
+        buff.put(b1);
+        buff.put(b2); // evicts item 1 to disk
+        assertEquals(b1, buff.get("item 1"));
+        assertEquals(List.of("put item 1", "put item 2", "hit item 1"), events);
+        assertEquals(2, buff.stats().putCount());
+        assertEquals(1, buff.stats().hitCount());
+        assertEquals(0, buff.stats().missCount());
+    }
+
+    @Test
+    public void test_RejectedPromotionStaysOnDisk(@TempDir Path directory) {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withWeigher(item -> item.id().equals("item 1") ? 2 : 1)
+                .withDiskTier(directory, DiskTierTests.CODEC, 1 << 16, Duration.ofSeconds(10), Runnable::run)
+                .build();
+        assertEquals(3, buff.putAll(List.of(b1, b2, b3))); // item 1 is evicted to disk
+        buff.resize(1); // item 1 no longer fits
+        assertEquals(b1, buff.get("item 1"));
+        assertFalse(buff.currentItems().contains(b1));
+        assertEquals(b1, buff.get("item 1")); // still on disk
+    }
+
+    @Test
+    public void test_SnapshotAndRestore(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("buffer.snapshot");
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.put(b3);
+        buff.get("item 1"); // eviction order is now item 2, item 3, item 1
+        time.set(300);
+        buff.snapshot(file, DiskTierTests.CODEC); // 700 ms left on each item
+
+        AtomicLong restoredTime = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> restored = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(restoredTime::get).build();
+        assertEquals(3, restored.restoreAsync(file, DiskTierTests.CODEC, Runnable::run).get());
+        assertEquals(Set.of("item 1", "item 2", "item 3"), ids(restored.currentItems()));
+        restored.put(b4);
+        assertEquals(Set.of("item 1", "item 3", "item 4"), ids(restored.currentItems()));
+        restoredTime.set(800); // the restored items kept their remaining lifetimes
+        assertEquals(Set.of("item 4"), ids(restored.currentItems()));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> restored.restore(file, DiskTierTests.CODEC));
+    }
+
+    @Test
+    public void test_PerItemLifetimes() {
+        AtomicLong time = new AtomicLong(0);
+        Expiry<SimpleBufferableItem> expiry = new Expiry<>() {
+            @Override
+            public Duration expireAfterCreate(SimpleBufferableItem item) {
+                return item.id().equals("item 1") ? Duration.ofMillis(1500) : Duration.ofMillis(300);
+            }
+
+            @Override
+            public Duration expireAfterTouch(SimpleBufferableItem item, Duration remaining) {
+                return remaining.plusMillis(300);
+            }
+        };
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withExpiry(expiry).withTicker(time::get).build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.put(b3, Duration.ofMillis(1000)); // overrides the expiry policy
+        assertTrue(buff.touch("item 2")); // 600 ms left
+        time.set(600);
+        assertEquals(Set.of("item 1", "item 2", "item 3"), ids(buff.currentItems()));
+        time.set(601);
+        assertEquals(Set.of("item 1", "item 3"), ids(buff.currentItems()));
+        time.set(1001);
+        assertEquals(Set.of("item 1"), ids(buff.currentItems()));
+        assertThrows(IllegalArgumentException.class, () -> buff.put(b2, Duration.ofMillis(-1)));
+    }
+
+    @Test
+    public void test_Ticker() {
+        AtomicLong time = new AtomicLong(1_000_000);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        buff.put(b1);
+        buff.put(b2);
+        time.addAndGet(1000);
+        assertTrue(buff.touch("item 1"));
+        assertEquals(Set.of("item 1", "item 2"), ids(buff.currentItems()));
+        time.addAndGet(1);
+        assertEquals(Set.of("item 1"), ids(buff.currentItems()));
+        buff.put(b3, Duration.ofMillis(5000));
+        time.addAndGet(1000);
+        assertEquals(b3, buff.get("item 3"));
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FSFTBuffer.Builder<SimpleBufferableItem>().withTicker(null));
+
+        long start = Ticker.coarse().read();
+        assertTrue(Math.abs(start - System.currentTimeMillis()) < 1000);
+        assertTrue(Ticker.coarse().read() >= start);
+    }
+
+    @Test
+    public void test_ExpirySweeper() throws InterruptedException {
+        AtomicLong time = new AtomicLong(1_000_000);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(5000).withTimeout(Duration.ofMinutes(1)).withTicker(time::get)
+                .withExpirySweeper(Duration.ofMillis(5)).build();
+        for (int i = 0; i < 3000; i++) {
+            buff.put(new SimpleBufferableItem("item " + i), Duration.ofMillis(10 * i));
+            time.incrementAndGet();
+        }
+        time.addAndGet(15_000); // items 0 to 1636 have expired
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buff.stats().expiryCount() < 1637 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1637, buff.stats().expiryCount());
+        time.addAndGet(Duration.ofHours(2).toMillis()); // the sweeper catches up in steps
+        while (buff.stats().expiryCount() < 3000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3000, buff.stats().expiryCount());
+        assertEquals(Set.of(), buff.currentItems());
+        assertThrows(IllegalArgumentException.class,
+                () -> new FSFTBuffer.Builder<SimpleBufferableItem>().withExpirySweeper(Duration.ZERO));
+    }
+
+    @Test
+    public void test_SoftValues() {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(1000).withSoftValues().build();
+        for (int i = 0; i < 100; i++) {
+            buff.put(new SimpleBufferableItem("soft " + i)); // only reachable through the buffer
+        }
+        buff.put(b1);
+        assertEquals(101, buff.currentItems().size());
+        exhaustHeap(); // soft references are cleared before an OutOfMemoryError is thrown
+        assertEquals(Set.of(b1), buff.currentItems());
+        assertEquals(100, buff.stats().evictionCount());
+        assertThrows(NoSuchElementException.class, () -> buff.get("soft 0"));
+        assertTrue(buff.put(new SimpleBufferableItem("soft 0")));
+        assertThrows(IllegalArgumentException.class, () -> new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withSoftValues().withOffHeapValues(DiskTierTests.CODEC).build());
+    }
+
+    @Test
+    public void test_Stream() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(20_000).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        for (int i = 0; i < 10_000; i++) {
+            buff.put(new SimpleBufferableItem("item " + i), Duration.ofMillis(i % 2 == 0 ? 100 : 1000));
+        }
+        time.set(500); // the even items have expired
+        assertEquals(1000, buff.stream().parallel().filter(item -> item.id().endsWith("1")).count());
+        assertEquals(5000, buff.stream().count());
+        assertTrue(buff.spliterator().trySplit() != null);
+        CacheStats stats = buff.stats();
+        assertEquals(0, stats.hitCount() + stats.expiryCount()); // scans are not requests
+
+        Iterator<SimpleBufferableItem> items = buff.stream().iterator();
+        items.next();
+        for (int i = 10_000; i < 15_000; i++) {
+            buff.put(new SimpleBufferableItem("item " + i)); // concurrent changes do not break the scan
+        }
+        int seen = 1;
+        while (items.hasNext()) {
+            items.next();
+            seen++;
+        }
+        assertTrue(seen >= 5000 && seen <= 10_000);
+
+        FSFTBuffer<SimpleBufferableItem> offHeap = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withOffHeapValues(DiskTierTests.CODEC).build();
+        offHeap.put(b1);
+        assertEquals(List.of(b1), offHeap.stream().toList());
+    }
+
+    @Test
+    public void test_ResizeAndSetTimeout() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        buff.putAll(List.of(b1, b2, b3));
+        buff.get("item 1");
+        buff.resize(2); // evicts item 2, the least recently used
+        assertEquals(Set.of(b1, b3), buff.currentItems());
+        assertEquals(2, buff.capacity());
+        buff.resize(4);
+        buff.setTimeout(Duration.ofMillis(100));
+        assertEquals(Duration.ofMillis(100), buff.timeout());
+        buff.put(b4);
+        time.set(500); // the new timeout only applies to item 4
+        assertEquals(Set.of(b1, b3), buff.currentItems());
+        assertThrows(IllegalArgumentException.class, () -> buff.resize(0));
+        assertThrows(IllegalArgumentException.class, () -> buff.setTimeout(Duration.ZERO));
+    }
+
+    @Test
+    public void test_AutoTuning() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(100).withTimeout(Duration.ofSeconds(60)).withTicker(time::get).build();
+        AutoTuner tuner = new AutoTuner(10_000, Duration.ofMinutes(10));
+        int[] trace = zipfTrace(100_000, 0.9, 1_500_000, 7);
+        for (int i = 0; i < trace.length; i++) {
+            buff.get("item " + trace[i], SimpleBufferableItem::new);
+            time.incrementAndGet(); // one request per millisecond
+            if (i % 5000 == 0) {
+                tuner.tune(buff);
+            }
+        }
+        // grows well past its starting size, but stops short of the budget
+        assertTrue(buff.capacity() > 1000 && buff.capacity() < 5000, "capacity " + buff.capacity());
+        assertTrue(buff.timeout().toSeconds() < 60, "timeout " + buff.timeout());
+        assertThrows(IllegalArgumentException.class, () -> new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(100).withAutoTuning(50, Duration.ofHours(1), Duration.ofSeconds(1)).build());
+    }
+
+    @Test
+    public void test_Stats() {
+        AtomicLong time = new AtomicLong(0);
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(3).withTimeout(Duration.ofMillis(1000)).withTicker(time::get).build();
+        buff.put(b1);
+        buff.put(b2);
+        buff.put(b2);
+        CacheStats start = buff.stats();
+        buff.get("item 1");
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 3"));
+        assertEquals(b3, buff.get("item 3", id -> b3));
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 4", id -> null));
+        buff.touch("item 2");
+        buff.put(b4); // evicts item 2
+        time.set(1001);
+        buff.currentItems(); // removes the expired items
+
+        CacheStats stats = buff.stats();
+        assertEquals(new CacheStats(1, 3, 4, 1, 1, 1, 3, 1, 1, stats.totalLoadTime()), stats);
+        CacheStats interval = stats.minus(start);
+        assertEquals(1, interval.hitCount());
+        assertEquals(0.25, interval.hitRate());
+        assertEquals(2, interval.putCount());
+        assertEquals(0, interval.duplicatePutCount());
+        assertTrue(interval.averageLoadPenalty() > 0);
+        assertEquals(1.0, new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0).hitRate());
+    }
+
+    private static Set<String> ids(Set<SimpleBufferableItem> items) {
+        Set<String> ids = new HashSet<>();
+        for (SimpleBufferableItem item : items) {
+            ids.add(item.id());
+        }
+        return ids;
+    }
+
+    private static void exhaustHeap() {
+        List<long[]> hog = new ArrayList<>();
+        try {
+            while (true) {
+                hog.add(new long[1 << 20]);
+            }
+        } catch (OutOfMemoryError e) {
+            hog.clear();
+        }
+    }
+
     @Test
     public void test_Get() throws InterruptedException {
         buff.put(b1);
@@ -0,0 +1,91 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongFSFTBufferTests {
+
+    @Test
+    public void test_PutGetTouchExpire() {
+        AtomicLong time = new AtomicLong(0);
+        LongFSFTBuffer<String> buff = new LongFSFTBuffer<>(3, Duration.ofMillis(1000), time::get);
+        assertTrue(buff.put(1, "one"));
+        assertTrue(buff.put(2, "two"));
+        assertFalse(buff.put(2, "deux")); // refreshes the timeout, keeps the value
+        time.set(800);
+        assertTrue(buff.touch(1));
+        assertTrue(buff.put(3, "three"));
+        time.set(1001); // item 2 has expired
+        assertEquals(2, buff.size());
+        assertFalse(buff.touch(2));
+        assertThrows(NoSuchElementException.class, () -> buff.get(2));
+        assertEquals("one", buff.get(1));
+        assertTrue(buff.put(4, "four"));
+        assertTrue(buff.put(5, "five")); // evicts item 3, the least recently used
+        assertThrows(NoSuchElementException.class, () -> buff.get(3));
+        assertEquals("one", buff.get(1));
+        assertEquals("four", buff.get(4));
+        assertEquals("five", buff.get(5));
+        time.set(1801); // item 1 expires at 1800 despite the gets, since gets do not refresh
+        assertThrows(NoSuchElementException.class, () -> buff.get(1));
+    }
+
+    @Test
+    public void test_MatchesReferenceModel() {
+        AtomicLong time = new AtomicLong(0);
+        int capacity = 100;
+        LongFSFTBuffer<Long> buff = new LongFSFTBuffer<>(capacity, Duration.ofMillis(50), time::get);
+        Map<Long, Long> expiry = new HashMap<>();
+        LinkedHashMap<Long, Long> model = new LinkedHashMap<>(16, 0.75f, true); // access order
+        Random rand = new Random(221);
+        for (int i = 0; i < 200_000; i++) {
+            long id = rand.nextInt(400) * 1024L; // ids that share low bits
+            time.addAndGet(rand.nextInt(2));
+            long now = time.get();
+            model.keySet().removeIf(key -> now > expiry.get(key));
+            switch (rand.nextInt(3)) {
+                case 0 -> {
+                    boolean added = !model.containsKey(id);
+                    if (added && model.size() == capacity) {
+                        model.remove(model.keySet().iterator().next());
+                    }
+                    if (added) {
+                        model.put(id, id);
+                    }
+                    expiry.put(id, now + 50);
+                    assertEquals(added, buff.put(id, id));
+                }
+                case 1 -> {
+                    if (model.containsKey(id)) {
+                        assertEquals(model.get(id), buff.get(id));
+                    } else {
+                        assertThrows(NoSuchElementException.class, () -> buff.get(id));
+                    }
+                }
+                default -> {
+                    boolean present = model.containsKey(id);
+                    if (present) {
+                        expiry.put(id, now + 50);
+                    }
+                    assertEquals(present, buff.touch(id));
+                }
+            }
+        }
+        assertEquals(model.size(), buff.size());
+    }
+
+    @Test
+    public void test_Null() {
+        assertThrows(IllegalArgumentException.class, () -> new LongFSFTBuffer<>(0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new LongFSFTBuffer<>(1, null));
+        LongFSFTBuffer<String> buff = new LongFSFTBuffer<>(1, Duration.ofSeconds(1));
+        assertThrows(IllegalArgumentException.class, () -> buff.put(1, null));
+        assertTrue(buff.put(Long.MIN_VALUE, "min"));
+        assertEquals("min", buff.get(Long.MIN_VALUE));
+    }
+}
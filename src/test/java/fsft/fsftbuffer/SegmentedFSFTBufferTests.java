@@ -0,0 +1,64 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedFSFTBufferTests {
+
+    @Test
+    public void test_PutGetTouch() throws InterruptedException {
+        Buffer<SimpleBufferableItem> buff = new SegmentedFSFTBuffer<>(64, Duration.ofMillis(500), 4);
+        SimpleBufferableItem b1 = new SimpleBufferableItem("item 1");
+        assertTrue(buff.put(b1));
+        assertFalse(buff.put(b1));
+        assertEquals(b1, buff.get("item 1"));
+        assertTrue(buff.touch("item 1"));
+        assertFalse(buff.touch("item 2"));
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 2"));
+        Thread.sleep(600);
+        assertThrows(NoSuchElementException.class, () -> buff.get("item 1"));
+    }
+
+    @Test
+    public void test_NeverExceedsCapacity() {
+        Buffer<SimpleBufferableItem> buff = new SegmentedFSFTBuffer<>(30, Duration.ofSeconds(10), 7);
+        for (int i = 0; i < 1000; i++) {
+            buff.put(new SimpleBufferableItem("item " + i));
+            assertTrue(buff.currentItems().size() <= 30);
+        }
+        assertTrue(buff.currentItems().size() >= 25); // segments fill up roughly evenly
+    }
+
+    @Test
+    public void test_BulkOperations() {
+        Buffer<SimpleBufferableItem> buff = new SegmentedFSFTBuffer<>(64, Duration.ofSeconds(10), 4);
+        List<SimpleBufferableItem> items = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(new SimpleBufferableItem("item " + i));
+            ids.add("item " + i);
+        }
+        assertEquals(20, buff.putAll(items));
+        ids.add("item 20");
+        Map<String, SimpleBufferableItem> hits = buff.getAll(ids);
+        assertEquals(20, hits.size());
+        for (SimpleBufferableItem item : items) {
+            assertSame(item, hits.get(item.id()));
+        }
+        assertEquals(20, buff.touchAll(ids));
+        assertEquals(Set.copyOf(items), Set.copyOf(buff.stream().parallel().toList()));
+    }
+
+    @Test
+    public void test_Null() {
+        Buffer<SimpleBufferableItem> buff = new SegmentedFSFTBuffer<>(8, Duration.ofSeconds(1), 2);
+        assertThrows(IllegalArgumentException.class, () -> buff.put(null));
+        assertThrows(IllegalArgumentException.class, () -> buff.get(null));
+        assertThrows(IllegalArgumentException.class, () -> buff.touch(null));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentedFSFTBuffer<>(2, Duration.ofSeconds(1), 4));
+    }
+}
@@ -0,0 +1,76 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlabAllocatorTests {
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] contents(ByteBuffer view) {
+        byte[] contents = new byte[view.remaining()];
+        view.get(contents);
+        return contents;
+    }
+
+    @Test
+    public void test_ReadsBackWhatWasWritten() {
+        SlabAllocator slabs = new SlabAllocator(256);
+        Map<Long, byte[]> blocks = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            byte[] contents = bytes(i * 7 % 100, i); // includes empty blocks
+            blocks.put(slabs.allocate(contents), contents);
+        }
+        byte[] huge = bytes(1000, 3); // larger than a slab
+        blocks.put(slabs.allocate(huge), huge);
+        assertEquals(41, blocks.size());
+        for (Map.Entry<Long, byte[]> block : blocks.entrySet()) {
+            assertArrayEquals(block.getValue(), contents(slabs.read(block.getKey())));
+        }
+    }
+
+    @Test
+    public void test_FreeingEverythingReleasesTheSlabs() {
+        SlabAllocator slabs = new SlabAllocator(256);
+        Random rand = new Random(42);
+        List<Long> live = new ArrayList<>();
+        for (int round = 0; round < 2000; round++) {
+            if (!live.isEmpty() && rand.nextBoolean()) {
+                slabs.free(live.remove(rand.nextInt(live.size())));
+            } else {
+                live.add(slabs.allocate(bytes(rand.nextInt(120), round)));
+            }
+        }
+        for (long address : live) {
+            slabs.free(address);
+        }
+        assertEquals(0, slabs.usedBytes());
+        assertEquals(256, slabs.reservedBytes()); // only the spare slab is kept
+    }
+
+    @Test
+    public void test_FreedNeighboursAreMerged() {
+        SlabAllocator slabs = new SlabAllocator(256);
+        long a = slabs.allocate(bytes(60, 0));
+        long b = slabs.allocate(bytes(60, 1));
+        long c = slabs.allocate(bytes(60, 2));
+        long d = slabs.allocate(bytes(60, 3));
+        slabs.free(a);
+        slabs.free(c);
+        slabs.free(b); // a, b, and c become one free block
+        long e = slabs.allocate(bytes(180, 4));
+        assertEquals(256, slabs.reservedBytes()); // e fits in the merged block
+        assertArrayEquals(bytes(180, 4), contents(slabs.read(e)));
+        assertArrayEquals(bytes(60, 3), contents(slabs.read(d)));
+    }
+}
@@ -0,0 +1,45 @@
+package fsft.fsftbuffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTests {
+
+    @Test
+    public void test_ExpiresExactlyAfterExpiryTime() {
+        long start = 1_700_000_000_000L;
+        TimerWheel<String> wheel = new TimerWheel<>(start);
+        long[] lifetimes = {1, 500, 1023, 1024, 5_000, 70_000, 4_000_000, 200_000_000, 10_000_000_000L};
+        Map<String, Long> expiryTimes = new HashMap<>();
+        for (long lifetime : lifetimes) {
+            Node<String> node = new Node<>("expires in " + lifetime, null, 1, start + lifetime);
+            expiryTimes.put(node.id, node.expiryTime);
+            wheel.schedule(node);
+        }
+        Set<String> expired = new HashSet<>();
+        long[] checkpoints = {start + 1, start + 2, start + 1024, start + 1025, start + 69_999,
+                start + 70_001, start + 4_000_001, start + 300_000_000, start + 10_000_000_001L};
+        for (long now : checkpoints) {
+            wheel.advance(now, node -> expired.add(node.id));
+            for (Map.Entry<String, Long> entry : expiryTimes.entrySet()) {
+                assertEquals(now > entry.getValue(), expired.contains(entry.getKey()), entry.getKey() + " at " + (now - start));
+            }
+        }
+    }
+
+    @Test
+    public void test_DescheduledNodesNeverExpire() {
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        Node<String> kept = new Node<>("kept", null, 1, 10);
+        Node<String> removed = new Node<>("removed", null, 1, 10);
+        wheel.schedule(kept);
+        wheel.schedule(removed);
+        wheel.deschedule(removed);
+        List<String> expired = new ArrayList<>();
+        assertEquals(1, wheel.advance(100, node -> expired.add(node.id)));
+        assertEquals(List.of("kept"), expired);
+    }
+}
@@ -0,0 +1,217 @@
+package fsft.fsftbuffer.distributed;
+
+import fsft.fsftbuffer.BufferableCodec;
+import fsft.fsftbuffer.FSFTBuffer;
+import fsft.fsftbuffer.SimpleBufferableItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistributedBufferTests {
+
+    private static final BufferableCodec<SimpleBufferableItem> CODEC = new BufferableCodec<>() {
+        @Override
+        public byte[] encode(SimpleBufferableItem item) {
+            return item.id().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public SimpleBufferableItem decode(ByteBuffer bytes) {
+            return new SimpleBufferableItem(StandardCharsets.UTF_8.decode(bytes).toString());
+        }
+    };
+
+    private final List<BufferServer<SimpleBufferableItem>> servers = new ArrayList<>();
+    private final Map<InetSocketAddress, FSFTBuffer<SimpleBufferableItem>> buffers = new HashMap<>();
+
+    private InetSocketAddress startNode() throws IOException {
+        FSFTBuffer<SimpleBufferableItem> buffer = new FSFTBuffer<>(1000, Duration.ofMinutes(10));
+        BufferServer<SimpleBufferableItem> server = new BufferServer<>(buffer, CODEC,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        servers.add(server);
+        buffers.put(server.address(), buffer);
+        return server.address();
+    }
+
+    private static Set<String> ids(Collection<SimpleBufferableItem> items) {
+        return items.stream().map(SimpleBufferableItem::id).collect(Collectors.toSet());
+    }
+
+    @AfterEach
+    public void stopNodes() throws IOException {
+        for (BufferServer<SimpleBufferableItem> server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void test_RoutesById() throws IOException {
+        List<InetSocketAddress> nodes = List.of(startNode(), startNode(), startNode());
+        try (DistributedBuffer<SimpleBufferableItem> buff = new DistributedBuffer<>(nodes, CODEC)) {
+            for (int i = 0; i < 300; i++) {
+                assertTrue(buff.put(new SimpleBufferableItem("item " + i)));
+            }
+            assertFalse(buff.put(new SimpleBufferableItem("item 0")));
+            for (int i = 0; i < 300; i++) {
+                assertEquals("item " + i, buff.get("item " + i).id());
+            }
+            assertTrue(buff.touch("item 7"));
+            assertFalse(buff.touch("item 300"));
+            assertThrows(NoSuchElementException.class, () -> buff.get("item 300"));
+
+            // each node holds exactly the ids the ring gives it, and every node holds some
+            HashRing ring = new HashRing(DistributedBuffer.DEFAULT_VIRTUAL_NODES);
+            for (InetSocketAddress node : nodes) {
+                ring = ring.with(node);
+            }
+            for (InetSocketAddress node : nodes) {
+                Set<String> held = ids(buffers.get(node).currentItems());
+                assertTrue(held.size() > 50, "holds " + held.size());
+                for (String id : held) {
+                    assertEquals(node, ring.nodeFor(id));
+                }
+            }
+            assertEquals(300, buff.currentItems().size());
+            assertEquals(300, buff.stats().putCount());
+            assertEquals(1, buff.stats().duplicatePutCount());
+            assertEquals(300, buff.stats().hitCount());
+
+            assertEquals("item 300", buff.get("item 300", SimpleBufferableItem::new).id());
+            assertEquals("item 300", buff.get("item 300").id());
+            assertThrows(NoSuchElementException.class, () -> buff.get("item 301", id -> null));
+            assertEquals(1, buff.stats().loadSuccessCount());
+            assertEquals(1, buff.stats().loadFailureCount());
+        }
+    }
+
+    @Test
+    public void test_JoinAndLeave() throws IOException {
+        InetSocketAddress first = startNode();
+        InetSocketAddress second = startNode();
+        try (DistributedBuffer<SimpleBufferableItem> buff = new DistributedBuffer<>(List.of(first, second), CODEC)) {
+            for (int i = 0; i < 300; i++) {
+                buff.put(new SimpleBufferableItem("item " + i));
+            }
+            InetSocketAddress third = startNode();
+            assertTrue(buff.addNode(third));
+            assertFalse(buff.addNode(third));
+            int taken = buffers.get(third).currentItems().size();
+            assertTrue(taken > 50 && taken < 150, "took " + taken);
+            for (int i = 0; i < 300; i++) {
+                assertEquals("item " + i, buff.get("item " + i).id());
+            }
+            assertEquals(300, buff.currentItems().size());
+            assertEquals(300, buffers.values().stream().mapToInt(b -> b.currentItems().size()).sum()); // no copies left
+
+            assertTrue(buff.removeNode(first));
+            assertFalse(buff.removeNode(first));
+            assertEquals(List.of(second, third), List.copyOf(buff.nodes()));
+            assertTrue(buffers.get(first).currentItems().isEmpty());
+            for (int i = 0; i < 300; i++) {
+                assertEquals("item " + i, buff.get("item " + i).id());
+            }
+            assertEquals(300, buff.currentItems().size());
+
+            // a node that is gone loses the items that only it holds, which can then be loaded again
+            Set<String> orphaned = ids(buffers.get(second).currentItems());
+            orphaned.removeAll(ids(buffers.get(third).currentItems()));
+            servers.get(1).close();
+            assertThrows(UncheckedIOException.class, () -> buff.touch(orphaned.iterator().next()));
+            assertTrue(buff.removeNode(second));
+            assertThrows(IllegalArgumentException.class, () -> buff.removeNode(third));
+            Set<String> lost = new HashSet<>();
+            for (int i = 0; i < 300; i++) {
+                if (!buff.touch("item " + i)) {
+                    lost.add("item " + i);
+                }
+            }
+            assertEquals(orphaned, lost);
+            assertEquals("item 0", buff.get("item 0", SimpleBufferableItem::new).id());
+        }
+    }
+
+    @Test
+    public void test_WrittenPutIsNotResent() throws IOException {
+        try (ServerSocket node = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            AtomicInteger puts = new AtomicInteger();
+            Thread server = new Thread(() -> { // answers a touch, then drops the connection on a put
+                while (true) {
+                    try (Socket socket = node.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        byte op = in.readByte();
+                        if (op == Protocol.TOUCH) {
+                            in.readUTF();
+                            out.writeByte(Protocol.OK);
+                            out.writeBoolean(false);
+                            out.flush();
+                            op = in.readByte();
+                        }
+                        if (op == Protocol.PUT) {
+                            Protocol.readItem(in);
+                            puts.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        if (node.isClosed()) {
+                            return;
+                        }
+                    }
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+            InetSocketAddress address = (InetSocketAddress) node.getLocalSocketAddress();
+            try (DistributedBuffer<SimpleBufferableItem> buff = new DistributedBuffer<>(List.of(address), CODEC)) {
+                assertFalse(buff.touch("item 1")); // leaves an idle connection
+                assertThrows(UncheckedIOException.class, () -> buff.put(new SimpleBufferableItem("item 1")));
+                assertEquals(1, puts.get());
+            }
+        }
+    }
+
+    @Test
+    public void test_UnreachableNodeIsNotAdded() throws IOException {
+        List<InetSocketAddress> nodes = List.of(startNode(), startNode());
+        InetSocketAddress closed;
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            closed = (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+        try (DistributedBuffer<SimpleBufferableItem> buff = new DistributedBuffer<>(nodes, CODEC)) {
+            for (int i = 0; i < 100; i++) {
+                buff.put(new SimpleBufferableItem("item " + i));
+            }
+            assertThrows(UncheckedIOException.class, () -> buff.addNode(closed));
+            assertEquals(nodes, List.copyOf(buff.nodes()));
+            for (int i = 0; i < 100; i++) {
+                assertEquals("item " + i, buff.get("item " + i).id()); // still routed to their nodes
+            }
+            assertEquals(100, buff.currentItems().size());
+        }
+    }
+
+    @Test
+    public void test_Null() throws IOException {
+        InetSocketAddress node = startNode();
+        assertThrows(IllegalArgumentException.class, () -> new DistributedBuffer<>(List.of(), CODEC));
+        assertThrows(IllegalArgumentException.class, () -> new DistributedBuffer<>(List.of(node), null));
+        try (DistributedBuffer<SimpleBufferableItem> buff = new DistributedBuffer<>(List.of(node), CODEC)) {
+            assertThrows(IllegalArgumentException.class, () -> buff.put(null));
+            assertThrows(IllegalArgumentException.class, () -> buff.get(null));
+            assertThrows(IllegalArgumentException.class, () -> buff.touch(null));
+            assertThrows(IllegalArgumentException.class, () -> buff.addNode(null));
+        }
+    }
+}
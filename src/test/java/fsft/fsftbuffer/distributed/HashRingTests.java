@@ -0,0 +1,62 @@
+package fsft.fsftbuffer.distributed;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashRingTests {
+
+    private static final int IDS = 100_000;
+
+    private static InetSocketAddress node(int port) {
+        return InetSocketAddress.createUnresolved("127.0.0.1", port);
+    }
+
+    @Test
+    public void test_Balance() {
+        HashRing ring = new HashRing(160).with(node(7001)).with(node(7002)).with(node(7003));
+        Map<InetSocketAddress, Integer> owned = new HashMap<>();
+        for (int i = 0; i < IDS; i++) {
+            owned.merge(ring.nodeFor("page " + i), 1, Integer::sum);
+        }
+        assertEquals(3, owned.size());
+        for (int count : owned.values()) {
+            // a share deviates by about 1 / sqrt(160), or 8%, so this allows three deviations
+            assertTrue(Math.abs(count - IDS / 3) < IDS / 3 / 4, "owns " + count);
+        }
+    }
+
+    @Test
+    public void test_JoinAndLeaveMoveOnlyTheirShare() {
+        HashRing three = new HashRing(160).with(node(7001)).with(node(7002)).with(node(7003));
+        HashRing four = three.with(node(7004));
+        int moved = 0;
+        for (int i = 0; i < IDS; i++) {
+            String id = "page " + i;
+            InetSocketAddress before = three.nodeFor(id);
+            InetSocketAddress after = four.nodeFor(id);
+            if (!before.equals(after)) {
+                assertEquals(node(7004), after); // ids only move to the new node
+                moved++;
+            }
+        }
+        assertTrue(moved > IDS / 4 * 0.8 && moved < IDS / 4 * 1.2, "moved " + moved);
+
+        HashRing left = four.without(node(7004));
+        for (int i = 0; i < IDS; i += 97) {
+            assertEquals(three.nodeFor("page " + i), left.nodeFor("page " + i));
+        }
+    }
+
+    @Test
+    public void test_Empty() {
+        HashRing ring = new HashRing(8);
+        assertThrows(IllegalStateException.class, () -> ring.nodeFor("page"));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(0));
+        assertEquals(node(7001), ring.with(node(7001)).nodeFor("page"));
+    }
+}
@@ -0,0 +1,115 @@
+package fsft.fsftbuffer.eviction;
+
+import fsft.fsftbuffer.FSFTBuffer;
+import fsft.fsftbuffer.SimpleBufferableItem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvictionPolicyTests {
+
+    static Stream<Supplier<EvictionPolicy>> policies() {
+        return Stream.of(LruPolicy::new, LfuPolicy::new, FifoPolicy::new, ClockPolicy::new,
+                SegmentedLruPolicy::new, ArcPolicy::new);
+    }
+
+    /**
+     * Inserts "a", "b", "c" into a policy of capacity 3, then accesses the given ids.
+     */
+    private static EvictionPolicy filled(EvictionPolicy policy, String... accesses) {
+        policy.setCapacity(3);
+        policy.recordInsert("a");
+        policy.recordInsert("b");
+        policy.recordInsert("c");
+        for (String id : accesses) {
+            policy.recordAccess(id);
+        }
+        return policy;
+    }
+
+    @Test
+    public void test_Lru() {
+        assertEquals("b", filled(new LruPolicy(), "a").victim("d"));
+    }
+
+    @Test
+    public void test_Fifo() {
+        assertEquals("a", filled(new FifoPolicy(), "a", "a").victim("d"));
+    }
+
+    @Test
+    public void test_Lfu() {
+        EvictionPolicy policy = filled(new LfuPolicy(), "a", "a", "c", "b", "b", "c");
+        policy.recordAccess("c");
+        assertEquals("a", policy.victim("d")); // a and b were used twice, a reached it first
+        policy.recordRemoval("a");
+        assertEquals("b", policy.victim("d"));
+    }
+
+    @Test
+    public void test_Clock() {
+        EvictionPolicy policy = filled(new ClockPolicy(), "a", "b");
+        assertEquals("c", policy.victim("d")); // a and b get a second chance
+        policy.recordEviction("c");
+        policy.recordInsert("d");
+        assertEquals("a", policy.victim("e")); // the second chances were used up
+    }
+
+    @Test
+    public void test_SegmentedLru() {
+        EvictionPolicy policy = filled(new SegmentedLruPolicy(), "a", "b");
+        assertEquals("c", policy.victim("d")); // c is still on probation
+        policy.recordRemoval("c");
+        assertEquals("a", policy.victim("d"));
+    }
+
+    @Test
+    public void test_Arc() {
+        EvictionPolicy policy = filled(new ArcPolicy(), "a");
+        assertEquals("b", policy.victim("d")); // t1 (seen once) is evicted before t2
+        policy.recordEviction("b");
+        policy.recordInsert("d");
+        assertEquals("c", policy.victim("b"));
+        policy.recordEviction("c");
+        policy.recordInsert("b"); // a ghost hit: b returns straight to the frequency list
+        policy.recordAccess("d");
+        assertEquals("a", policy.victim("e")); // t1 is now empty, so the LRU item of t2 goes
+    }
+
+    @ParameterizedTest
+    @MethodSource("policies")
+    public void test_EvictionOrderStartsWithTheVictim(Supplier<EvictionPolicy> factory) {
+        EvictionPolicy policy = filled(factory.get(), "b", "a", "b");
+        List<String> order = policy.evictionOrder();
+        assertEquals(Set.of("a", "b", "c"), new HashSet<>(order));
+        assertEquals(3, order.size());
+        assertEquals(policy.victim("d"), order.get(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("policies")
+    public void test_BufferWithPolicy(Supplier<EvictionPolicy> factory) {
+        FSFTBuffer<SimpleBufferableItem> buff = new FSFTBuffer.Builder<SimpleBufferableItem>()
+                .withCapacity(20).withTimeout(Duration.ofSeconds(10)).withEvictionPolicy(factory).build();
+        Random rand = new Random(1);
+        int hits = 0;
+        for (int i = 0; i < 5000; i++) {
+            String id = "item " + (rand.nextBoolean() ? rand.nextInt(10) : rand.nextInt(1000));
+            try {
+                buff.get(id);
+                hits++;
+            } catch (NoSuchElementException e) {
+                assertTrue(buff.put(new SimpleBufferableItem(id)));
+            }
+            assertTrue(buff.currentItems().size() <= 20);
+        }
+        assertTrue(hits > 1000); // the ten hot items mostly stay in the buffer
+    }
+}
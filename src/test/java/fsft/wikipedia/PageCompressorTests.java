@@ -0,0 +1,66 @@
+package fsft.wikipedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageCompressorTests {
+
+    private static String article(int sentences) {
+        String[] words = {"the", "city", "of", "Vancouver", "is", "a", "major", "port", "in",
+                "British", "Columbia", "and", "its", "population", "grew", "after", "1886", "Montréal", "São Paulo"};
+        Random rand = new Random(25);
+        StringBuilder text = new StringBuilder("{{Infobox settlement}}\n");
+        for (int i = 0; i < sentences; i++) {
+            for (int j = 0; j < 12; j++) {
+                text.append(words[rand.nextInt(words.length)]).append(j == 11 ? ". " : " ");
+            }
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void test_RoundTrip() {
+        PageCompressor compressor = new PageCompressor();
+        String text = article(500);
+        WikiPage page = compressor.page("Vancouver", text);
+        assertEquals("Vancouver", page.id());
+        assertEquals(text, page.getText());
+        assertEquals(text, page.getText());
+        assertNotSame(page.getText(), page.getText()); // no hot set, so each read decompresses
+
+        String shortText = article(100).substring(0, PageCompressor.DEFAULT_THRESHOLD - 1);
+        assertSame(shortText, compressor.page("Stub", shortText).getText());
+        assertNull(compressor.page("Missing", null).getText());
+
+        StringBuilder noise = new StringBuilder();
+        Random rand = new Random(25);
+        for (int i = 0; i < 4096; i++) {
+            noise.append((char) (0x4E00 + rand.nextInt(20000))); // incompressible CJK characters
+        }
+        String incompressible = noise.toString();
+        assertSame(incompressible, compressor.page("Noise", incompressible).getText());
+
+        assertThrows(IllegalArgumentException.class, () -> compressor.page(null, text));
+        assertThrows(IllegalArgumentException.class, () -> new PageCompressor(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PageCompressor(0, -1));
+    }
+
+    @Test
+    public void test_HotSet() {
+        PageCompressor compressor = new PageCompressor(0, 2);
+        WikiPage first = compressor.page("First", article(100));
+        WikiPage second = compressor.page("Second", article(100));
+        WikiPage third = compressor.page("Third", article(100));
+        String text = first.getText();
+        assertSame(text, first.getText());
+        String secondText = second.getText();
+        assertSame(text, first.getText()); // first is now the most recently read
+        third.getText(); // pushes second out
+        assertSame(text, first.getText());
+        assertNotSame(secondText, second.getText());
+        assertEquals(secondText, second.getText());
+    }
+}